@@ -0,0 +1,334 @@
+package lineup;
+
+import lineup.util.IntList;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.*;
+
+/**
+ * Corpus read from a memory-mapped file in a binary format, which can be opened without parsing it.
+ * Translations are read from the file only when they are accessed, each in constant time.
+ *
+ * The file starts with a magic number and a format version followed by the source and target language and
+ * the number of translations. Then comes an index of the offset of every translation's record relative to
+ * the end of the index, followed by one last offset marking the end of the records. A record holds the
+ * number of source sentences, the sentences, the number of target sentences and those sentences. All numbers
+ * are written as big-endian ints, strings as their length in bytes followed by their UTF-8 encoding.
+ */
+public class BinaryCorpus extends AbstractList<Translation> implements RandomAccess {
+
+    public static final int MAGIC = 0x4C555043; // "LUPC"
+    public static final int VERSION = 1;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private ByteBuffer buffer;
+    private String sourceLanguage;
+    private String targetLanguage;
+    private int size;
+    private int offsets;
+    private int records;
+
+    protected BinaryCorpus(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+
+        if (buffer.limit() < 8 || buffer.getInt(0) != MAGIC)
+            throw new IOException("Not a binary corpus");
+
+        int version = buffer.getInt(4);
+        if (version != VERSION)
+            throw new IOException("Unsupported corpus version " + version + " (expected " + VERSION + ")");
+
+        int position = 8;
+
+        sourceLanguage = string(position);
+        position += 4 + buffer.getInt(position);
+        targetLanguage = string(position);
+        position += 4 + buffer.getInt(position);
+
+        size = buffer.getInt(position);
+        offsets = position + 4;
+        records = offsets + (size + 1) * 4;
+
+        if (records > buffer.limit() || records + buffer.getInt(offsets + size * 4) > buffer.limit())
+            throw new IOException("Truncated binary corpus");
+    }
+
+    /**
+     * Opens a binary corpus. Only its header is read.
+     *
+     * @param file File written by #write or #convert.
+     */
+    public static BinaryCorpus open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+        try {
+            FileChannel channel = raf.getChannel();
+
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("Corpus too large to be mapped: " + file);
+
+            return new BinaryCorpus(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Writes translations to a binary corpus file. They are written while they are iterated, so that
+     * they do not have to be held in memory.
+     *
+     * @param translations Translations which all have the same source and target language.
+     * @param file File to write to. It is replaced if it exists.
+     *
+     * @return The number of translations written.
+     */
+    public static int write(Iterator<? extends NtoNTranslation> translations, File file) throws IOException {
+        // the index precedes the records, so the records are buffered in a temporary file first
+        File records = File.createTempFile("lineup-corpus", ".tmp", file.getAbsoluteFile().getParentFile());
+        IntList offsets = new IntList();
+        String sourceLanguage = null, targetLanguage = null;
+
+        try {
+            CountingOutputStream counter = new CountingOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(records), 1 << 16));
+            DataOutputStream out = new DataOutputStream(counter);
+
+            try {
+                while (translations.hasNext()) {
+                    NtoNTranslation tr = translations.next();
+
+                    if (offsets.isEmpty()) {
+                        sourceLanguage = tr.getSourceLanguage();
+                        targetLanguage = tr.getTargetLanguage();
+                    } else if (!sourceLanguage.equals(tr.getSourceLanguage()) ||
+                            !targetLanguage.equals(tr.getTargetLanguage())) {
+                        throw new IllegalArgumentException("Expected translations from " + sourceLanguage +
+                                " to " + targetLanguage + " but got: " + tr);
+                    }
+                    if (counter.count() > Integer.MAX_VALUE)
+                        throw new IOException("Corpus too large for the binary format");
+
+                    offsets.add((int) counter.count());
+                    writeStrings(out, tr.getSourceSentences());
+                    writeStrings(out, tr.getTargetSentences());
+                }
+            } finally {
+                out.close();
+            }
+            if (sourceLanguage == null) {
+                sourceLanguage = targetLanguage = "";
+            }
+
+            // the whole file has to fit into a mapped buffer, see #open
+            long size = 4 + 4 + 4 + sourceLanguage.getBytes(UTF8).length + 4 + targetLanguage.getBytes(UTF8).length
+                    + 4 + (offsets.size() + 1) * 4L + counter.count();
+            if (size > Integer.MAX_VALUE)
+                throw new IOException("Corpus too large for the binary format");
+
+            DataOutputStream header = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+
+            try {
+                header.writeInt(MAGIC);
+                header.writeInt(VERSION);
+                writeString(header, sourceLanguage);
+                writeString(header, targetLanguage);
+                header.writeInt(offsets.size());
+                for (int i = 0; i < offsets.size(); ++i) {
+                    header.writeInt(offsets.get(i));
+                }
+                header.writeInt((int) counter.count());
+
+                InputStream in = new FileInputStream(records);
+                try {
+                    byte[] bytes = new byte[1 << 16];
+                    int read;
+
+                    while ((read = in.read(bytes)) != -1) {
+                        header.write(bytes, 0, read);
+                    }
+                } finally {
+                    in.close();
+                }
+            } finally {
+                header.close();
+            }
+        } finally {
+            if (!records.delete()) {
+                records.deleteOnExit();
+            }
+        }
+
+        return offsets.size();
+    }
+
+    public static int write(List<? extends NtoNTranslation> corpus, File file) throws IOException {
+        return write(corpus.iterator(), file);
+    }
+
+    /**
+     * Converts a corpus from the text format read by the LineupCorpusReader to the binary format.
+     * Unlike the LineupCorpusReader the conversion fails at the first error instead of ending
+     * the corpus there. The binary file is not written then.
+     *
+     * @return The number of translations converted.
+     *
+     * @throws CorpusFormatException if the text corpus is malformed.
+     */
+    public static int convert(File textFile, File binaryFile) throws IOException, CorpusFormatException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(textFile), UTF8));
+
+        try {
+            return write(new LineupCorpusReader().streamCorpus(in, false, true), binaryFile);
+        } catch (LineupCorpusReader.ReadError e) {
+            if (e.getCause() instanceof CorpusFormatException) {
+                throw (CorpusFormatException) e.getCause();
+            }
+            throw (IOException) e.getCause();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Converts a text corpus to a binary one.
+     *
+     * Usage: BinaryCorpus &lt;text corpus&gt; &lt;binary corpus&gt;
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: BinaryCorpus <text corpus> <binary corpus>");
+            System.exit(1);
+        }
+
+        long start = System.currentTimeMillis();
+
+        try {
+            int translations = convert(new File(args[0]), new File(args[1]));
+
+            System.out.println("Converted " + translations + " translations in " +
+                    (System.currentTimeMillis() - start) + " ms");
+        } catch (CorpusFormatException e) {
+            System.err.println("Invalid corpus format: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(UTF8);
+
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> strings) throws IOException {
+        out.writeInt(strings.size());
+        for (String string : strings) {
+            writeString(out, string);
+        }
+    }
+
+    @Override
+    public Translation get(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+
+        int sources = records + buffer.getInt(offsets + index * 4);
+        int targets = skipStrings(sources);
+
+        return new Translation(sourceLanguage, targetLanguage, new Sentences(sources), new Sentences(targets));
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public String getSourceLanguage() {
+        return sourceLanguage;
+    }
+
+    public String getTargetLanguage() {
+        return targetLanguage;
+    }
+
+    /**
+     * Position after a number of strings preceded by their count.
+     */
+    private int skipStrings(int position) {
+        int count = buffer.getInt(position);
+
+        position += 4;
+        for (int i = 0; i < count; ++i) {
+            position += 4 + buffer.getInt(position);
+        }
+
+        return position;
+    }
+
+    private String string(int position) {
+        byte[] bytes = new byte[buffer.getInt(position)];
+        ByteBuffer in = buffer.duplicate();
+
+        in.position(position + 4);
+        in.get(bytes);
+
+        return new String(bytes, UTF8);
+    }
+
+    /**
+     * Read-only view of the sentences of a record decoding them on access.
+     */
+    private class Sentences extends AbstractList<String> implements RandomAccess {
+        private int position;
+
+        public Sentences(int position) {
+            this.position = position;
+        }
+
+        @Override
+        public String get(int index) {
+            if (index < 0 || index >= size())
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+
+            int start = position + 4;
+            for (int i = 0; i < index; ++i) {
+                start += 4 + buffer.getInt(start);
+            }
+
+            return string(start);
+        }
+
+        @Override
+        public int size() {
+            return buffer.getInt(position);
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        public CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            ++count;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        public long count() {
+            return count;
+        }
+    }
+}
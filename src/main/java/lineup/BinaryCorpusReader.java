@@ -0,0 +1,33 @@
+package lineup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Reads corpora in the binary format of the BinaryCorpus. The files are memory-mapped, so opening a corpus
+ * takes constant time and translations are only read when they are accessed.
+ *
+ * Unlike the text readers this is no CorpusReader, as binary corpora cannot be read from character streams.
+ */
+public class BinaryCorpusReader {
+
+    /**
+     * Opens a binary corpus.
+     *
+     * @param file File written by BinaryCorpus#write or BinaryCorpus#convert.
+     * @return Random access list reading translations from the file.
+     */
+    public List<Translation> readCorpus(String file) throws IOException {
+        return open(new File(file));
+    }
+
+    /**
+     * Opens a binary corpus.
+     *
+     * @param file File written by BinaryCorpus#write or BinaryCorpus#convert.
+     */
+    public BinaryCorpus open(File file) throws IOException {
+        return BinaryCorpus.open(file);
+    }
+}
@@ -0,0 +1,244 @@
+package lineup;
+
+import lineup.util.LongIntMap;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Counts for every pair of a source and a target term the number of translations containing both of them.
+ * Translations of a deduplicated corpus are counted as often as they occurred (see TokenizedCorpus#weight).
+ * The counts are computed once for the whole corpus of a PostingIndex, so that looking them up does not require
+ * intersecting posting lists anymore.
+ *
+ * Pairs occurring less often than a minimum count are not stored to bound the table's size. Their counts
+ * are unknown to the table.
+ */
+public class CooccurrenceTable {
+
+    private LongIntMap counts;
+    private PostingIndex postingIndex;
+    private int minCount;
+
+    /**
+     * Counts the co-occurrences of all terms of the given index.
+     *
+     * The source terms are split into ranges whose pairs are counted over the whole corpus, so that every
+     * range's counts are complete and rare pairs can be dropped before the ranges are merged. There are
+     * more ranges than partitions to keep the unpruned counts held at a time small.
+     *
+     * @param postingIndex Index whose corpus to count term pairs in.
+     * @param minCount Pairs which co-occur in less translations are not stored.
+     * @param exec ExecutorService used to count the ranges in parallel.
+     * @param partitions Number of ranges counted in parallel.
+     */
+    public CooccurrenceTable(PostingIndex postingIndex, int minCount, ExecutorService exec, int partitions) {
+        this.postingIndex = postingIndex;
+        this.minCount = minCount;
+
+        int terms = postingIndex.getTerms(true).size();
+        long total = 0;
+        List<Callable<LongIntMap>> tasks = new LinkedList<Callable<LongIntMap>>();
+
+        for (int term = 0; term < terms; ++term) {
+            total += postingIndex.postings(term, true).length;
+        }
+
+        long ranges = Math.max(1, Math.min((long) partitions * 4, terms));
+        long volume = 0;
+        int from = 0;
+        for (int term = 0; term < terms; ++term) {
+            volume += postingIndex.postings(term, true).length;
+            if (term + 1 == terms || volume * ranges >= total * (tasks.size() + 1)) {
+                tasks.add(countTask(from, term + 1));
+                from = term + 1;
+            }
+        }
+
+        try {
+            List<LongIntMap> partials = new ArrayList<LongIntMap>(tasks.size());
+            int size = 0;
+
+            for (Future<LongIntMap> range : exec.invokeAll(tasks)) {
+                partials.add(range.get());
+                size += partials.get(partials.size() - 1).size();
+            }
+            counts = new LongIntMap(size);
+            for (LongIntMap partial : partials) {
+                counts.addAll(partial);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while counting co-occurrences", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Could not count co-occurrences", e.getCause());
+        }
+    }
+
+    /**
+     * Restores a CooccurrenceTable, e.g. after reading it from a file.
+     *
+     * @param postingIndex Index whose corpus the pairs have been counted in.
+     * @param minCount Minimum count of the stored pairs.
+     * @param counts Counts by term pair as returned by #getCounts.
+     */
+    public CooccurrenceTable(PostingIndex postingIndex, int minCount, LongIntMap counts) {
+        this.postingIndex = postingIndex;
+        this.minCount = minCount;
+        this.counts = counts;
+    }
+
+    /**
+     * Counts the term pairs of translations appended to the corpus after the PostingIndex has been
+     * updated accordingly (see PostingIndex#append).
+     *
+     * Pairs which have not been stored before because they were too rare are counted anew using the
+     * posting lists, so that the counts are the same as if the table had been built for the whole corpus.
+     *
+     * @param from Id of the first new translation.
+     * @param to Id after the last new translation.
+     */
+    public void append(int from, int to) {
+        LongIntMap added = countPartition(from, to);
+
+        for (int slot = 0; slot < added.slots(); ++slot) {
+            if (added.used(slot)) {
+                long key = added.key(slot);
+
+                if (minCount <= 1 || counts.containsKey(key)) {
+                    counts.add(key, added.value(slot));
+                } else {
+                    int count = getPostingIndex().intersectionCount(
+                            getPostingIndex().postings((int) (key >>> 32), true),
+                            getPostingIndex().postings((int) key, false));
+
+                    if (count >= minCount) {
+                        counts.put(key, count);
+                    }
+                }
+            }
+        }
+    }
+
+    private Callable<LongIntMap> countTask(final int from, final int to) {
+        return new Callable<LongIntMap>() {
+            public LongIntMap call() throws Exception {
+                LongIntMap result = countTerms(from, to);
+
+                if (minCount > 1) {
+                    result.retainAtLeast(minCount);
+                }
+                return result;
+            }
+        };
+    }
+
+    /**
+     * Counts the pairs of a range of source terms in the whole corpus.
+     *
+     * @param from Id of the first source term to count.
+     * @param to Id after the last source term to count.
+     */
+    protected LongIntMap countTerms(int from, int to) {
+        TokenizedCorpus corpus = getPostingIndex().getTokenizedCorpus();
+        TokenizedCorpus.Side targets = corpus.getTarget();
+        LongIntMap result = new LongIntMap(Math.min((to - from) * 16, 1 << 20));
+
+        for (int term = from; term < to; ++term) {
+            for (int id : getPostingIndex().postings(term, true)) {
+                int weight = corpus.weight(id);
+
+                for (int j = targets.termStart(id); j < targets.termEnd(id); ++j) {
+                    result.add(LongIntMap.key(term, targets.termId(j)), weight);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Counts the term pairs of a part of the corpus.
+     *
+     * @param from Id of the first translation to count.
+     * @param to Id after the last translation to count.
+     */
+    protected LongIntMap countPartition(int from, int to) {
+        TokenizedCorpus.Side sources = getPostingIndex().getTokenizedCorpus().getSource();
+        TokenizedCorpus.Side targets = getPostingIndex().getTokenizedCorpus().getTarget();
+        LongIntMap result = new LongIntMap(Math.min((to - from) * 16, 1 << 20));
+
+        for (int id = from; id < to; ++id) {
+            int weight = getPostingIndex().getTokenizedCorpus().weight(id);
+
+            for (int i = sources.termStart(id); i < sources.termEnd(id); ++i) {
+                for (int j = targets.termStart(id); j < targets.termEnd(id); ++j) {
+                    result.add(LongIntMap.key(sources.termId(i), targets.termId(j)), weight);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Number of translations containing both given terms.
+     *
+     * @param sourceTerm Id of a source term.
+     * @param targetTerm Id of a target term.
+     *
+     * @return The number of co-occurrences or -1 if they are less than the minimum count and hence unknown.
+     */
+    public int count(int sourceTerm, int targetTerm) {
+        if (sourceTerm == -1 || targetTerm == -1) {
+            return 0;
+        }
+
+        return counts.get(LongIntMap.key(sourceTerm, targetTerm), minCount > 1 ? -1 : 0);
+    }
+
+    /**
+     * Number of translations containing both given words in the sense of WordParser#findWord.
+     *
+     * @param sourceWord Word in the source sentences.
+     * @param targetWord Word in the target sentences.
+     *
+     * @return The number of co-occurrences or -1 if it is unknown, either because one of the words does not
+     *         consist of a single term or because they co-occur less often than the minimum count.
+     */
+    public int count(String sourceWord, String targetWord) {
+        WordParser parser = getPostingIndex().getWordParser();
+
+        if (!parser.literalWordMatching() || !parser.isTerm(sourceWord) || !parser.isTerm(targetWord)) {
+            return -1;
+        }
+
+        return count(
+                getPostingIndex().termId(parser.normalizeTerm(sourceWord), true),
+                getPostingIndex().termId(parser.normalizeTerm(targetWord), false));
+    }
+
+    /**
+     * Number of stored term pairs.
+     */
+    public int size() {
+        return counts.size();
+    }
+
+    /**
+     * The stored counts keyed by LongIntMap#key(sourceTerm, targetTerm). Must not be modified.
+     */
+    public LongIntMap getCounts() {
+        return counts;
+    }
+
+    public int getMinCount() {
+        return minCount;
+    }
+
+    public PostingIndex getPostingIndex() {
+        return postingIndex;
+    }
+}
@@ -0,0 +1,150 @@
+package lineup;
+
+import lineup.util.IntList;
+
+import java.util.*;
+
+/**
+ * Index of the declension candidates within a vocabulary.
+ *
+ * WordParser#declension only relates words whose umlaut-folded forms (&auml; to a, &ouml; to o and &uuml; to u)
+ * share a common prefix and differ by at most 3 characters in length. Hence every word of the vocabulary
+ * is put into the buckets of its folded form cut short by 0 to 3 characters. A lookup then only needs
+ * to check the words of the buckets for the folded word itself and for its prefixes within that window,
+ * instead of the whole vocabulary.
+ */
+public class DeclensionIndex {
+
+    private static final int WINDOW = 3;
+
+    private Vocabulary vocabulary;
+    private WordParser wordParser;
+    private Map<String, int[]> buckets;
+    private int indexed = 0;
+
+    /**
+     * Creates a new DeclensionIndex.
+     *
+     * @param vocabulary Vocabulary containing possible declensions.
+     * @param wordParser WordParser deciding which words are declensions of each other.
+     */
+    public DeclensionIndex(Vocabulary vocabulary, WordParser wordParser) {
+        this.vocabulary = vocabulary;
+        this.wordParser = wordParser;
+
+        if (wordParser.prefixDeclensions()) {
+            buckets = new HashMap<String, int[]>();
+            update();
+        }
+    }
+
+    /**
+     * Indexes the words which have been added to the vocabulary since the last update.
+     */
+    public void update() {
+        if (buckets != null) {
+            Map<String, IntList> ids = new HashMap<String, IntList>();
+
+            for (int id = indexed; id < vocabulary.size(); ++id) {
+                String word = vocabulary.word(id);
+
+                if (word.length() <= WINDOW)
+                    continue;
+
+                String folded = fold(word);
+                for (int length = folded.length(); length > WINDOW && length >= folded.length() - WINDOW; --length) {
+                    String key = folded.substring(0, length);
+                    IntList bucket = ids.get(key);
+
+                    if (bucket == null) {
+                        bucket = new IntList(1);
+                        ids.put(key, bucket);
+                    }
+                    bucket.add(id);
+                }
+            }
+
+            for (Map.Entry<String, IntList> entry : ids.entrySet()) {
+                int[] bucket = buckets.get(entry.getKey());
+                int[] added = entry.getValue().toArray();
+
+                if (bucket != null) {
+                    int[] merged = Arrays.copyOf(bucket, bucket.length + added.length);
+
+                    System.arraycopy(added, 0, merged, bucket.length, added.length);
+                    added = merged;
+                }
+                buckets.put(entry.getKey(), added);
+            }
+        }
+        indexed = vocabulary.size();
+    }
+
+    /**
+     * Finds all words of the vocabulary which are declensions of the given word. Yields the same words
+     * as checking every word longer than 3 characters using WordParser#declension.
+     *
+     * @param word Word to find declensions for. Words of 3 or less characters do not have any.
+     *
+     * @return A new mutable set of declensions which includes the word itself if it is contained in the vocabulary.
+     */
+    public Set<String> declensions(String word) {
+        Set<String> result = new HashSet<String>();
+
+        if (word.length() <= WINDOW) {
+            return result;
+        }
+
+        if (buckets == null) {
+            for (int id = 0; id < vocabulary.size(); ++id) {
+                addIfDeclension(word, vocabulary.word(id), result);
+            }
+            return result;
+        }
+
+        String folded = fold(word);
+        int[] longer = buckets.get(folded); // words starting with the folded word, at most 3 characters longer
+
+        if (longer != null) {
+            for (int id : longer) {
+                addIfDeclension(word, vocabulary.word(id), result);
+            }
+        }
+        for (int length = folded.length() - 1; length > WINDOW && length >= folded.length() - WINDOW; --length) {
+            int[] shorter = buckets.get(folded.substring(0, length));
+
+            if (shorter != null) {
+                for (int id : shorter) {
+                    String cand = vocabulary.word(id);
+
+                    if (cand.length() == length) { // bucket's other words do not start with this prefix
+                        addIfDeclension(word, cand, result);
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
+    protected void addIfDeclension(String word, String cand, Set<String> declensions) {
+        if (cand.length() > WINDOW && getWordParser().declension(word, cand)) {
+            declensions.add(cand);
+        }
+    }
+
+    /**
+     * Replaces umlauts with the vowels WordParser#declension considers equivalent.
+     */
+    public static String fold(String word) {
+        return word.replace('\u00E4', 'a').replace('\u00F6', 'o').replace('\u00FC', 'u');
+    }
+
+    public Vocabulary getVocabulary() {
+        return vocabulary;
+    }
+
+    public WordParser getWordParser() {
+        return wordParser;
+    }
+}
@@ -0,0 +1,225 @@
+package lineup;
+
+import lineup.util.IntList;
+import lineup.util.LongIntMap;
+
+import java.util.*;
+
+/**
+ * Corpus holding every distinct translation only once together with the number of times it occurred.
+ *
+ * Translations are considered equal if their languages and sentences are the same after trimming the
+ * sentences and collapsing runs of whitespace. Only the first occurrence is kept. Repeated pairs, e.g.
+ * boilerplate such as "Resumption of the session", are thereby tokenized and indexed just once, while the
+ * model weights all of its counts by the multiplicities (see TokenizedCorpus#weight), so that its
+ * probabilities are the same as for the original corpus.
+ */
+public class DeduplicatedCorpus<T extends NtoNTranslation> extends AbstractList<T> implements RandomAccess {
+
+    private List<T> translations;
+    private IntList multiplicities = new IntList();
+    private int totalSize;
+
+    /**
+     * Index of the first translation with a certain hash of its normalized content.
+     */
+    private LongIntMap hashes = new LongIntMap();
+
+    /**
+     * Indices of further translations whose hashes collide with the one of a different translation.
+     */
+    private Map<Long, IntList> collisions = new HashMap<Long, IntList>();
+
+    /**
+     * Creates an empty corpus.
+     *
+     * @param translations Empty list to keep the distinct translations in, e.g. a TranslationStore.
+     */
+    public DeduplicatedCorpus(List<T> translations) {
+        if (!translations.isEmpty())
+            throw new IllegalArgumentException("Expected an empty list");
+
+        this.translations = translations;
+    }
+
+    public DeduplicatedCorpus() {
+        this(new ArrayList<T>());
+    }
+
+    /**
+     * Deduplicates a corpus keeping the distinct translations in the order of their first occurrence.
+     */
+    public static <T extends NtoNTranslation> DeduplicatedCorpus<T> of(Collection<? extends T> corpus) {
+        DeduplicatedCorpus<T> result = new DeduplicatedCorpus<T>();
+
+        result.addAll(corpus);
+
+        return result;
+    }
+
+    /**
+     * Adds a translation unless an equal one is contained already, in which case that one's multiplicity
+     * is incremented instead.
+     *
+     * @return Always true as either the size or a multiplicity changes.
+     */
+    @Override
+    public boolean add(T translation) {
+        long hash = hash(translation);
+        int index = hashes.get(hash, -1);
+
+        if (index == -1) {
+            hashes.put(hash, append(translation));
+        } else if (equal(get(index), translation)) {
+            increment(index);
+        } else {
+            IntList colliding = collisions.get(hash);
+
+            if (colliding == null) {
+                colliding = new IntList();
+                collisions.put(hash, colliding);
+            }
+            for (int i = 0; i < colliding.size(); ++i) {
+                if (equal(get(colliding.get(i)), translation)) {
+                    increment(colliding.get(i));
+
+                    return true;
+                }
+            }
+            colliding.add(append(translation));
+        }
+
+        return true;
+    }
+
+    private int append(T translation) {
+        translations.add(translation);
+        multiplicities.add(1);
+        ++totalSize;
+        ++modCount;
+
+        return translations.size() - 1;
+    }
+
+    private void increment(int index) {
+        multiplicities.set(index, multiplicities.get(index) + 1);
+        ++totalSize;
+    }
+
+    @Override
+    public T get(int index) {
+        return translations.get(index);
+    }
+
+    @Override
+    public int size() {
+        return translations.size();
+    }
+
+    /**
+     * Number of times the translation at the given index occurred in the original corpus.
+     */
+    public int multiplicity(int index) {
+        return multiplicities.get(index);
+    }
+
+    /**
+     * Number of translations of the original corpus including all duplicates.
+     */
+    public int totalSize() {
+        return totalSize;
+    }
+
+    /**
+     * The list the distinct translations are kept in.
+     */
+    public List<T> getTranslations() {
+        return translations;
+    }
+
+    /**
+     * Multiplicity of the translation at the given index of a corpus, which is always 1 unless the corpus
+     * is deduplicated.
+     */
+    public static int multiplicity(Collection<?> corpus, int index) {
+        return corpus instanceof DeduplicatedCorpus ? ((DeduplicatedCorpus<?>) corpus).multiplicity(index) : 1;
+    }
+
+    protected static long hash(NtoNTranslation tr) {
+        long hash = 0xcbf29ce484222325L;
+
+        hash = hash(hash, tr.getSourceLanguage());
+        hash = hash(hash, tr.getTargetLanguage());
+        for (String sentence : tr.getSourceSentences()) {
+            hash = hash(hash, normalize(sentence));
+        }
+        hash = hash(hash, null); // separates the source from the target sentences
+        for (String sentence : tr.getTargetSentences()) {
+            hash = hash(hash, normalize(sentence));
+        }
+
+        return hash & Long.MAX_VALUE;
+    }
+
+    private static long hash(long hash, String string) {
+        if (string != null) {
+            for (int i = 0; i < string.length(); ++i) {
+                hash = (hash ^ string.charAt(i)) * 0x100000001b3L;
+            }
+        }
+
+        return (hash ^ (string != null ? string.length() : -1)) * 0x100000001b3L;
+    }
+
+    protected static boolean equal(NtoNTranslation a, NtoNTranslation b) {
+        return equal(a.getSourceLanguage(), b.getSourceLanguage()) &&
+                equal(a.getTargetLanguage(), b.getTargetLanguage()) &&
+                equal(a.getSourceSentences(), b.getSourceSentences()) &&
+                equal(a.getTargetSentences(), b.getTargetSentences());
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static boolean equal(List<String> a, List<String> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+
+        Iterator<String> i = a.iterator(), j = b.iterator();
+
+        while (i.hasNext()) {
+            if (!normalize(i.next()).equals(normalize(j.next()))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Trims a sentence and replaces every run of whitespace within it with a single space.
+     */
+    protected static String normalize(String sentence) {
+        String trimmed = sentence.trim();
+        StringBuilder sb = new StringBuilder(trimmed.length());
+        boolean space = false;
+
+        for (int i = 0; i < trimmed.length(); ++i) {
+            char ch = trimmed.charAt(i);
+
+            if (Character.isWhitespace(ch)) {
+                if (!space) {
+                    sb.append(' ');
+                }
+                space = true;
+            } else {
+                sb.append(ch);
+                space = false;
+            }
+        }
+
+        return sb.toString();
+    }
+}
@@ -72,8 +72,24 @@ public class Demo {
         return null;
     }
 
-    public static void main(String[] args) throws UnsupportedEncodingException {
-        new Demo().run(args);
+    /**
+     * Starts the demo. If a file is given the model is loaded from it, or saved to it if it does not exist yet.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0) {
+            File snapshot = new File(args[0]);
+
+            if (snapshot.exists()) {
+                new Demo(StatAlign.load(snapshot)).run(args);
+            } else {
+                StatAlign<Translation> stat = new StatAlign<Translation>(loadCorpus());
+
+                stat.save(snapshot);
+                new Demo(stat).run(args);
+            }
+        } else {
+            new Demo().run(args);
+        }
     }
 
     public void run(String[] args) {
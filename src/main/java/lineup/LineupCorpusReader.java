@@ -1,22 +1,59 @@
 package lineup;
 
 import java.io.*;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * Description goes here.
  *
  * @author Markus Kahl
  */
-public class LineupCorpusReader implements CorpusReader {
+public class LineupCorpusReader implements StreamingCorpusReader {
 
     private String sourceLanguage;
     private String targetLanguage;
 
+    private boolean deduplicate = false;
+
     public List<Translation> readCorpus(String file) throws FileNotFoundException {
+        return readCorpus(streamCorpus(file));
+    }
+
+    /**
+     * Reads a corpus. The reader is left open.
+     */
+    public List<Translation> readCorpus(Reader reader) {
+        return readCorpus(streamCorpus(reader));
+    }
+
+    protected List<Translation> readCorpus(Iterator<Translation> translations) {
+        TranslationStore store = new TranslationStore();
+        List<Translation> result = newCorpus(store);
+
+        while (translations.hasNext()) {
+            result.add(translations.next());
+        }
+        store.trimToSize();
+
+        return result;
+    }
+
+    /**
+     * Creates the list to read a corpus into, which is deduplicated if requested (see #setDeduplicate).
+     *
+     * @param store Store to keep the translations in.
+     */
+    protected List<Translation> newCorpus(TranslationStore store) {
+        return isDeduplicate() ? new DeduplicatedCorpus<Translation>(store) : store;
+    }
+
+    public Iterator<Translation> streamCorpus(String file) throws FileNotFoundException {
         try {
-            return readCorpus(new InputStreamReader(new FileInputStream(file), "UTF8"));
+            return streamCorpus(
+                    new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF8")), true, false);
         } catch (UnsupportedEncodingException e) {
             System.err.println("Unsupported Encoding: " + e.getMessage());
             System.exit(1);
@@ -24,70 +61,165 @@ public class LineupCorpusReader implements CorpusReader {
         return null;
     }
 
-    public List<Translation> readCorpus(Reader reader) {
-        List<Translation> result = new LinkedList<Translation>();
-        BufferedReader in = new BufferedReader(reader);
+    public Iterator<Translation> streamCorpus(Reader reader) {
+        return streamCorpus(new BufferedReader(reader), false, false);
+    }
+
+    /**
+     * Reads translations lazily.
+     *
+     * @param in Reader to read the corpus from.
+     * @param closeReader If true the reader is closed as soon as the iteration has ended.
+     * @param failOnError If true the first error is thrown as a ReadError instead of being reported
+     *                    on System.err and ending the iteration.
+     */
+    protected Iterator<Translation> streamCorpus(BufferedReader in, boolean closeReader, boolean failOnError) {
+        return new TranslationIterator(in, closeReader, failOnError);
+    }
+
+    /**
+     * Reads the next translation from a corpus.
+     *
+     * @return The next translation or null if the end of the corpus has been reached.
+     */
+    protected Translation readTranslation(BufferedReader in) throws IOException, CorpusFormatException {
         String source = null, target = null, line;
 
-        try {
-            while ((line = in.readLine()) != null) {
-                line = line.trim();
-                if (line.startsWith("#") || line.isEmpty()) continue;
-
-                if (source == null) {
-                    source = line;
-                } else if (target == null) {
-                    target = line;
-                }
-                if (source != null && target != null) {
-                    parseLanguage(source, true);
-                    parseLanguage(target, false);
+        while ((line = in.readLine()) != null) {
+            line = line.trim();
+            if (line.startsWith("#") || line.isEmpty()) continue;
+
+            if (source == null) {
+                source = line;
+            } else if (target == null) {
+                target = line;
+            }
+            if (source != null && target != null) {
+                parseLanguage(source, true);
+                parseLanguage(target, false);
 
-                    Translation trans = new Translation(getSourceLanguage(), getTargetLanguage());
-                    trans.getSourceSentences().addAll(parseSentences(source));
-                    trans.getTargetSentences().addAll(parseSentences(target));
+                Translation trans = new Translation(getSourceLanguage(), getTargetLanguage());
+                trans.getSourceSentences().addAll(parseSentences(source));
+                trans.getTargetSentences().addAll(parseSentences(target));
 
-                    result.add(trans);
+                return trans;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Parses translations on demand. Errors either end the iteration or are thrown, see #streamCorpus.
+     */
+    private class TranslationIterator implements Iterator<Translation> {
+        private BufferedReader in;
+        private boolean closeReader;
+        private boolean failOnError;
+        private Translation next;
+        private boolean done = false;
+
+        public TranslationIterator(BufferedReader in, boolean closeReader, boolean failOnError) {
+            this.in = in;
+            this.closeReader = closeReader;
+            this.failOnError = failOnError;
+        }
 
-                    source = null;
-                    target = null;
+        public boolean hasNext() {
+            if (next == null && !done) {
+                try {
+                    next = readTranslation(in);
+                } catch (IOException e) {
+                    fail(e, "Could not read corpus: " + e.getMessage() + " (" + e.getClass().getName() + ")");
+                } catch (CorpusFormatException e) {
+                    fail(e, "Invalid corpus format: " + e.getMessage());
+                } finally {
+                    done = next == null;
+                    if (done && closeReader) {
+                        close();
+                    }
                 }
             }
-        } catch (IOException e) {
-            System.err.println("Could not read corpus: " + e.getMessage() +
-                    " (" + e.getClass().getName() + ")");
-        } catch (CorpusFormatException e) {
-            System.err.println("Invalid corpus format: " + e.getMessage());
+
+            return next != null;
         }
 
-        return result;
+        private void fail(Exception e, String message) {
+            if (failOnError) {
+                throw new ReadError(e);
+            }
+            System.err.println(message);
+        }
+
+        private void close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                System.err.println("Could not close corpus: " + e.getMessage());
+            }
+        }
+
+        public Translation next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            Translation result = next;
+            next = null;
+
+            return result;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("Cannot remove translations from a corpus being read");
+        }
+    }
+
+    /**
+     * Carries an IOException or CorpusFormatException out of an Iterator, see #streamCorpus.
+     */
+    protected static class ReadError extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public ReadError(Exception cause) {
+            super(cause);
+        }
     }
 
     protected void parseLanguage(String line, boolean source) throws CorpusFormatException {
         if (line.matches("[a-z]{2} \\d.*")) {
-            String lang = line.substring(0, line.indexOf(" "));
-            if (source) {
-                if (getSourceLanguage() == null) {
-                    sourceLanguage = lang;
-                } else if (!lang.equals(getSourceLanguage())) {
-                    throw new CorpusFormatException("Unexpected source language (expected "
-                            + getSourceLanguage() + ") in: " + line);
-                }
-            } else if (!source) {
-                if (getTargetLanguage() == null) {
-                    targetLanguage = lang;
-                } else if (!lang.equals(getTargetLanguage())) {
-                    throw new CorpusFormatException("Unexpected target language (expected "
-                            + getTargetLanguage() + ") in: " + line);
-                } else if (getTargetLanguage().equals(getSourceLanguage())) {
-                    throw new CorpusFormatException("Source and target language must be different.");
-                }
-            }
+            checkLanguage(line.substring(0, line.indexOf(" ")), line, source);
         } else {
             throw new CorpusFormatException("Expected language, got: " + line);
         }
     }
 
+    /**
+     * Checks that a line's language is the same as the one of all previous lines of the same side.
+     *
+     * @param lang Language of the line.
+     * @param line Line of the corpus.
+     * @param source True if the line holds source sentences.
+     */
+    protected void checkLanguage(String lang, String line, boolean source) throws CorpusFormatException {
+        if (source) {
+            if (getSourceLanguage() == null) {
+                sourceLanguage = lang;
+            } else if (!lang.equals(getSourceLanguage())) {
+                throw new CorpusFormatException("Unexpected source language (expected "
+                        + getSourceLanguage() + ") in: " + line);
+            }
+        } else if (!source) {
+            if (getTargetLanguage() == null) {
+                targetLanguage = lang;
+            } else if (!lang.equals(getTargetLanguage())) {
+                throw new CorpusFormatException("Unexpected target language (expected "
+                        + getTargetLanguage() + ") in: " + line);
+            } else if (getTargetLanguage().equals(getSourceLanguage())) {
+                throw new CorpusFormatException("Source and target language must be different.");
+            }
+        }
+    }
+
     protected List<String> parseSentences(String line) throws CorpusFormatException {
         String[] tokens = line.split(":|\\|");
         if (tokens.length >= 2 && tokens[0].matches("[a-z]{2} \\d")) {
@@ -108,4 +240,15 @@ public class LineupCorpusReader implements CorpusReader {
     public String getTargetLanguage() {
         return targetLanguage;
     }
+
+    public boolean isDeduplicate() {
+        return deduplicate;
+    }
+
+    /**
+     * If set, repeated translations are only kept once and the corpus is returned as a DeduplicatedCorpus.
+     */
+    public void setDeduplicate(boolean deduplicate) {
+        this.deduplicate = deduplicate;
+    }
 }
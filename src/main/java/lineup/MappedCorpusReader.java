@@ -0,0 +1,331 @@
+package lineup;
+
+import lineup.util.IntList;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Reads corpora in the same format and with the same results as the LineupCorpusReader, but parses
+ * memory-mapped files in parallel and without regular expressions.
+ *
+ * The file is cut into chunks at line breaks, in which the lines which are neither empty nor comments are
+ * located in parallel. Consecutive pairs of those lines form the translations, which are then parsed
+ * in parallel as well. Only checking the languages of all lines is done sequentially in the end, so that
+ * the first format error is reported just as the LineupCorpusReader would report it.
+ */
+public class MappedCorpusReader extends LineupCorpusReader {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private ExecutorService exec;
+    private int partitions;
+
+    /**
+     * Creates a new MappedCorpusReader.
+     *
+     * @param exec ExecutorService used to parse chunks of a corpus in parallel. It is not shut down.
+     * @param partitions Number of chunks to split a corpus into.
+     */
+    public MappedCorpusReader(ExecutorService exec, int partitions) {
+        this.exec = exec;
+        this.partitions = Math.max(1, partitions);
+    }
+
+    /**
+     * Creates a new MappedCorpusReader which starts a thread for each available processor while reading.
+     */
+    public MappedCorpusReader() {
+        this(null, Runtime.getRuntime().availableProcessors());
+    }
+
+    @Override
+    public List<Translation> readCorpus(String file) throws FileNotFoundException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+        try {
+            FileChannel channel = raf.getChannel();
+
+            if (channel.size() > Integer.MAX_VALUE) {
+                return super.readCorpus(file); // too large to be mapped at once
+            }
+
+            return readCorpus(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException e) {
+            System.err.println("Could not read corpus: " + e.getMessage() +
+                    " (" + e.getClass().getName() + ")");
+            return newCorpus(new TranslationStore());
+        } finally {
+            try {
+                raf.close();
+            } catch (IOException e) {
+                System.err.println("[warning] could not close corpus: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Reads a corpus from a buffer holding its UTF-8 encoded text.
+     */
+    public List<Translation> readCorpus(final ByteBuffer buffer) {
+        ExecutorService exec = this.exec != null ? this.exec : Executors.newFixedThreadPool(partitions);
+
+        try {
+            return readCorpus(buffer, exec);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reading corpus", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Could not read corpus", e.getCause());
+        } finally {
+            if (exec != this.exec) {
+                exec.shutdown();
+            }
+        }
+    }
+
+    protected List<Translation> readCorpus(final ByteBuffer buffer, ExecutorService exec)
+            throws InterruptedException, ExecutionException {
+
+        int size = buffer.limit();
+        int chunks = Math.max(1, Math.min(partitions, size / (1 << 16)));
+        List<Callable<IntList>> scans = new ArrayList<Callable<IntList>>(chunks);
+        int start = 0;
+
+        for (int i = 1; i <= chunks; ++i) {
+            int end = i < chunks ? lineEnd(buffer, (int) ((long) size * i / chunks)) : size;
+
+            if (end > start) {
+                final int from = start;
+                final int to = end;
+
+                scans.add(new Callable<IntList>() {
+                    public IntList call() throws Exception {
+                        return contentLines(buffer, from, to);
+                    }
+                });
+                start = end;
+            }
+        }
+
+        IntList lines = new IntList();
+        for (Future<IntList> scan : exec.invokeAll(scans)) {
+            IntList chunk = scan.get();
+
+            for (int i = 0; i < chunk.size(); ++i) {
+                lines.add(chunk.get(i));
+            }
+        }
+
+        final int[] bounds = lines.toArray();
+        final int pairs = bounds.length / 4; // an incomplete last pair is ignored
+        final ParsedPair[] parsed = new ParsedPair[pairs];
+        List<Callable<Void>> parses = new ArrayList<Callable<Void>>(partitions);
+
+        for (int i = 0; i < partitions; ++i) {
+            final int from = (int) ((long) pairs * i / partitions);
+            final int to = (int) ((long) pairs * (i + 1) / partitions);
+
+            parses.add(new Callable<Void>() {
+                public Void call() throws Exception {
+                    ByteBuffer in = buffer.duplicate();
+
+                    for (int pair = from; pair < to; ++pair) {
+                        parsed[pair] = new ParsedPair(
+                                decode(in, bounds[pair * 4], bounds[pair * 4 + 1]),
+                                decode(in, bounds[pair * 4 + 2], bounds[pair * 4 + 3]));
+                    }
+                    return null;
+                }
+            });
+        }
+        for (Future<Void> parse : exec.invokeAll(parses)) {
+            parse.get();
+        }
+
+        TranslationStore store = new TranslationStore();
+        List<Translation> result = newCorpus(store);
+
+        try {
+            for (ParsedPair pair : parsed) {
+                result.add(pair.toTranslation());
+            }
+        } catch (CorpusFormatException e) {
+            System.err.println("Invalid corpus format: " + e.getMessage());
+        }
+        store.trimToSize();
+
+        return result;
+    }
+
+    /**
+     * Finds the end of the line containing the given position, i.e. the position after its line break.
+     */
+    protected static int lineEnd(ByteBuffer buffer, int position) {
+        while (position < buffer.limit() && buffer.get(position++) != '\n') ;
+
+        return position;
+    }
+
+    /**
+     * Locates the lines of a chunk which are neither empty nor comments. Lines end with \n, \r or \r\n.
+     *
+     * @return Start and end of every such line without leading and trailing whitespace.
+     */
+    protected static IntList contentLines(ByteBuffer buffer, int from, int to) {
+        IntList lines = new IntList();
+        int start = from;
+
+        while (start < to) {
+            int end = start;
+            byte b;
+
+            while (end < to && (b = buffer.get(end)) != '\n' && b != '\r') {
+                ++end;
+            }
+
+            // trimming bytes works like String#trim as multi-byte UTF-8 sequences do not contain such bytes
+            int first = start;
+            int last = end;
+
+            while (first < last && (buffer.get(first) & 0xff) <= ' ') {
+                ++first;
+            }
+            while (last > first && (buffer.get(last - 1) & 0xff) <= ' ') {
+                --last;
+            }
+            if (last > first && buffer.get(first) != '#') {
+                lines.add(first);
+                lines.add(last);
+            }
+
+            start = end + 1;
+        }
+
+        return lines;
+    }
+
+    protected static String decode(ByteBuffer buffer, int from, int to) {
+        byte[] bytes = new byte[to - from];
+
+        buffer.position(from);
+        buffer.get(bytes);
+
+        return new String(bytes, UTF8);
+    }
+
+    /**
+     * Language of a line, i.e. its first two letters if it matches <code>[a-z]{2} \d.*</code>.
+     *
+     * @return The language or null if the line does not start with one.
+     */
+    protected static String language(String line) {
+        if (line.length() < 4 || !isLanguage(line, 0) || line.charAt(2) != ' ' || !isDigit(line.charAt(3))) {
+            return null;
+        }
+        for (int i = 4; i < line.length(); ++i) {
+            if (isLineTerminator(line.charAt(i))) { // not matched by .
+                return null;
+            }
+        }
+
+        return line.substring(0, 2);
+    }
+
+    /**
+     * Sentences of a line as split by LineupCorpusReader#parseSentences.
+     *
+     * @return The sentences or null if the line cannot be parsed.
+     */
+    protected static List<String> sentences(String line) {
+        List<String> tokens = new ArrayList<String>();
+        int start = 0;
+
+        for (int i = 0; i < line.length(); ++i) {
+            char ch = line.charAt(i);
+
+            if (ch == ':' || ch == '|') {
+                tokens.add(line.substring(start, i));
+                start = i + 1;
+            }
+        }
+        tokens.add(line.substring(start));
+
+        // String#split drops trailing empty strings
+        while (!tokens.isEmpty() && tokens.get(tokens.size() - 1).isEmpty()) {
+            tokens.remove(tokens.size() - 1);
+        }
+
+        String head = tokens.isEmpty() ? "" : tokens.get(0);
+
+        if (tokens.size() >= 2 && head.length() == 4 && isLanguage(head, 0) && head.charAt(2) == ' '
+                && isDigit(head.charAt(3))) {
+            List<String> result = new ArrayList<String>(tokens.size() - 1);
+
+            for (String token : tokens.subList(1, tokens.size())) {
+                result.add(token.trim());
+            }
+            return result;
+        }
+
+        return null;
+    }
+
+    private static boolean isLanguage(String line, int index) {
+        return line.charAt(index) >= 'a' && line.charAt(index) <= 'z' &&
+                line.charAt(index + 1) >= 'a' && line.charAt(index + 1) <= 'z';
+    }
+
+    private static boolean isDigit(char ch) {
+        return ch >= '0' && ch <= '9';
+    }
+
+    private static boolean isLineTerminator(char ch) {
+        return ch == '\n' || ch == '\r' || ch == '\u0085' || ch == '\u2028' || ch == '\u2029';
+    }
+
+    /**
+     * A source and a target line parsed independently of the rest of the corpus.
+     */
+    private class ParsedPair {
+        private String sourceLine;
+        private String targetLine;
+        private String sourceLanguage;
+        private String targetLanguage;
+        private List<String> sources;
+        private List<String> targets;
+
+        public ParsedPair(String sourceLine, String targetLine) {
+            this.sourceLine = sourceLine;
+            this.targetLine = targetLine;
+            this.sourceLanguage = language(sourceLine);
+            this.targetLanguage = language(targetLine);
+            this.sources = sentences(sourceLine);
+            this.targets = sentences(targetLine);
+        }
+
+        /**
+         * Checks this pair in the order of LineupCorpusReader#readCorpus and creates its translation.
+         */
+        public Translation toTranslation() throws CorpusFormatException {
+            if (sourceLanguage == null)
+                throw new CorpusFormatException("Expected language, got: " + sourceLine);
+            checkLanguage(sourceLanguage, sourceLine, true);
+
+            if (targetLanguage == null)
+                throw new CorpusFormatException("Expected language, got: " + targetLine);
+            checkLanguage(targetLanguage, targetLine, false);
+
+            if (sources == null)
+                throw new CorpusFormatException("Could not parse sentences: " + sourceLine);
+            if (targets == null)
+                throw new CorpusFormatException("Could not parse sentences: " + targetLine);
+
+            return new Translation(getSourceLanguage(), getTargetLanguage(), sources, targets);
+        }
+    }
+}
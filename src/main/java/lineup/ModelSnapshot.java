@@ -0,0 +1,370 @@
+package lineup;
+
+import lineup.util.LongIntMap;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary snapshot of a StatAlign model, so that it can be loaded without parsing and tokenizing the
+ * corpus again.
+ *
+ * A snapshot holds the corpus' sentences, both vocabularies with their counts, the tokenized corpus,
+ * the weights of deduplicated translations, the posting lists and, if built, the co-occurrence counts.
+ * It starts with a magic number and a format version. All numbers are written big-endian, strings as
+ * their length in bytes followed by their UTF-8 encoding, and arrays as their length followed by their
+ * elements.
+ *
+ * Snapshots are read into memory as a whole: every sentence is decoded into a TranslationStore, the arrays
+ * are copied out in bulk and the vocabularies' hash tables are rebuilt. A loaded model therefore takes as
+ * much memory as a built one, and StatAlign still has to rebuild its DeclensionIndexes, which take most of
+ * the load time. What loading saves is tokenizing the corpus, building the posting lists and counting
+ * co-occurrences.
+ */
+public class ModelSnapshot {
+
+    public static final int MAGIC = 0x4C55504D; // "LUPM"
+    public static final int VERSION = 1;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private List<Translation> corpus;
+    private TokenizedCorpus tokenizedCorpus;
+    private PostingIndex postingIndex;
+    private CooccurrenceTable cooccurrences;
+
+    protected ModelSnapshot(List<Translation> corpus, TokenizedCorpus tokenizedCorpus,
+                            PostingIndex postingIndex, CooccurrenceTable cooccurrences) {
+        this.corpus = corpus;
+        this.tokenizedCorpus = tokenizedCorpus;
+        this.postingIndex = postingIndex;
+        this.cooccurrences = cooccurrences;
+    }
+
+    /**
+     * Writes a model's snapshot to a file.
+     *
+     * @param model Model to save.
+     * @param file File to write to. It is replaced if it exists.
+     */
+    public static void write(StatAlign<?> model, File file) throws IOException {
+        write(model.getCorpus(), model.getPostingIndex(), model.getCooccurrences(), file);
+    }
+
+    /**
+     * Tokenizes a part of a corpus and writes it to a shard file. Shards of a corpus can be created
+     * independently, e.g. by separate processes, and then be merged into one model (see #merge).
+     *
+     * @param shard Consecutive translations of a corpus.
+     * @param wordParser WordParser to extract words and terms from sentences.
+     * @param file File to write to. It is replaced if it exists.
+     */
+    public static void writeShard(List<? extends NtoNTranslation> shard, WordParser wordParser, File file)
+            throws IOException {
+        write(shard, new PostingIndex(shard, new TokenizedCorpus(shard, wordParser)), null, file);
+    }
+
+    protected static void write(List<? extends NtoNTranslation> corpus, PostingIndex postingIndex,
+                                CooccurrenceTable cooccurrences, File file) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+
+        try {
+            write(corpus, postingIndex, cooccurrences, out);
+        } finally {
+            out.close();
+        }
+    }
+
+    protected static void write(List<? extends NtoNTranslation> corpus, PostingIndex postingIndex,
+                                CooccurrenceTable cooccurrences, DataOutputStream out) throws IOException {
+        TokenizedCorpus tokenizedCorpus = postingIndex.getTokenizedCorpus();
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        writeString(out, tokenizedCorpus.getWordParser().getClass().getName());
+
+        out.writeInt(corpus.size());
+        for (NtoNTranslation tr : corpus) {
+            writeString(out, tr.getSourceLanguage());
+            writeString(out, tr.getTargetLanguage());
+            writeStrings(out, tr.getSourceSentences());
+            writeStrings(out, tr.getTargetSentences());
+        }
+
+        int[] weights = tokenizedCorpus.getWeights();
+
+        out.writeInt(weights != null ? weights.length : 0);
+        for (int i = 0; weights != null && i < weights.length; ++i) {
+            out.writeInt(weights[i]);
+        }
+
+        for (boolean source : new boolean[] { true, false }) {
+            TokenizedCorpus.Side side = tokenizedCorpus.side(source);
+            int size = tokenizedCorpus.size();
+
+            writeVocabulary(out, side.getVocabulary());
+            writeVocabulary(out, side.getTerms());
+
+            out.writeInt(size + 1);
+            for (int i = 0; i <= size; ++i) {
+                out.writeInt(side.tokenStart(i));
+            }
+            out.writeInt(side.tokenStart(size));
+            for (int i = 0; i < side.tokenStart(size); ++i) {
+                out.writeInt(side.wordId(i));
+            }
+            out.writeInt(size + 1);
+            for (int i = 0; i <= size; ++i) {
+                out.writeInt(side.termStart(i));
+            }
+            out.writeInt(side.termStart(size));
+            for (int i = 0; i < side.termStart(size); ++i) {
+                out.writeInt(side.termId(i));
+            }
+
+            // posting lists as offsets into their concatenation
+            int terms = side.getTerms().size();
+            int offset = 0;
+
+            out.writeInt(terms + 1);
+            out.writeInt(offset);
+            for (int term = 0; term < terms; ++term) {
+                offset += postingIndex.postings(term, source).length;
+                out.writeInt(offset);
+            }
+            out.writeInt(offset);
+            for (int term = 0; term < terms; ++term) {
+                for (int id : postingIndex.postings(term, source)) {
+                    out.writeInt(id);
+                }
+            }
+        }
+
+        out.writeBoolean(cooccurrences != null);
+        if (cooccurrences != null) {
+            LongIntMap counts = cooccurrences.getCounts();
+
+            out.writeInt(cooccurrences.getMinCount());
+            out.writeInt(counts.slots());
+            for (int slot = 0; slot < counts.slots(); ++slot) {
+                out.writeLong(counts.key(slot));
+            }
+            out.writeInt(counts.slots());
+            for (int slot = 0; slot < counts.slots(); ++slot) {
+                out.writeInt(counts.value(slot));
+            }
+        }
+    }
+
+    /**
+     * Reads a snapshot from a file.
+     *
+     * @param file File to read from.
+     * @param wordParser WordParser to use with the model. Must be of the same class as the one the
+     *                   snapshot has been created with.
+     */
+    public static ModelSnapshot read(File file, WordParser wordParser) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+        try {
+            FileChannel channel = raf.getChannel();
+
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("Snapshot too large: " + file);
+
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0)
+                    throw new EOFException("Snapshot truncated while reading: " + file);
+            }
+            buffer.flip();
+
+            return read(buffer, wordParser);
+        } finally {
+            raf.close();
+        }
+    }
+
+    protected static ModelSnapshot read(ByteBuffer in, WordParser wordParser) throws IOException {
+        if (in.remaining() < 8 || in.getInt() != MAGIC)
+            throw new IOException("Not a model snapshot");
+
+        int version = in.getInt();
+        if (version != VERSION)
+            throw new IOException("Unsupported snapshot version " + version + " (expected " + VERSION + ")");
+
+        String parser = readString(in);
+        if (!parser.equals(wordParser.getClass().getName()))
+            throw new IllegalArgumentException("Snapshot has been created using " + parser +
+                    ", not " + wordParser.getClass().getName());
+
+        int size = in.getInt();
+        TranslationStore corpus = new TranslationStore();
+
+        for (int i = 0; i < size; ++i) {
+            Translation tr = new Translation(readString(in), readString(in));
+
+            readStrings(in, tr.getSourceSentences());
+            readStrings(in, tr.getTargetSentences());
+            corpus.add(tr);
+        }
+        corpus.trimToSize();
+
+        int[] weights = readInts(in);
+
+        TokenizedCorpus.Side[] sides = new TokenizedCorpus.Side[2];
+        int[][][] postings = new int[2][][];
+
+        for (int s = 0; s < 2; ++s) {
+            Vocabulary vocabulary = readVocabulary(in);
+            Vocabulary terms = readVocabulary(in);
+
+            sides[s] = new TokenizedCorpus.Side(
+                    vocabulary, terms, readInts(in), readInts(in), readInts(in), readInts(in));
+
+            int[] offsets = readInts(in);
+            int length = in.getInt();
+            IntBuffer ids = in.asIntBuffer();
+
+            postings[s] = new int[offsets.length - 1][];
+            for (int term = 0; term < postings[s].length; ++term) {
+                postings[s][term] = new int[offsets[term + 1] - offsets[term]];
+                ids.get(postings[s][term]);
+            }
+            in.position(in.position() + length * 4);
+        }
+
+        TokenizedCorpus tokenizedCorpus = new TokenizedCorpus(
+                sides[0], sides[1], size, weights.length > 0 ? weights : null, wordParser);
+        PostingIndex postingIndex = new PostingIndex(corpus, tokenizedCorpus, postings[0], postings[1]);
+        CooccurrenceTable cooccurrences = null;
+
+        if (in.get() != 0) {
+            int minCount = in.getInt();
+
+            cooccurrences = new CooccurrenceTable(postingIndex, minCount, new LongIntMap(readLongs(in), readInts(in)));
+        }
+
+        return new ModelSnapshot(corpus, tokenizedCorpus, postingIndex, cooccurrences);
+    }
+
+    /**
+     * Reads shard files and merges them in the given order into one snapshot, which is the same as that of
+     * a model of the whole corpus without co-occurrences.
+     *
+     * @param shards Shard files written by #writeShard.
+     * @param wordParser WordParser the shards have been created with.
+     */
+    public static ModelSnapshot merge(List<File> shards, WordParser wordParser) throws IOException {
+        List<Translation> corpus = new TranslationStore();
+        List<TokenizedCorpus> tokenizedShards = new ArrayList<TokenizedCorpus>(shards.size());
+
+        for (File file : shards) {
+            ModelSnapshot shard = read(file, wordParser);
+
+            corpus.addAll(shard.getCorpus());
+            tokenizedShards.add(shard.getTokenizedCorpus());
+        }
+
+        TokenizedCorpus tokenizedCorpus = TokenizedCorpus.merge(tokenizedShards, wordParser);
+
+        return new ModelSnapshot(corpus, tokenizedCorpus, new PostingIndex(corpus, tokenizedCorpus), null);
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(UTF8);
+
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> strings) throws IOException {
+        out.writeInt(strings.size());
+        for (String string : strings) {
+            writeString(out, string);
+        }
+    }
+
+    private static void writeVocabulary(DataOutputStream out, Vocabulary vocabulary) throws IOException {
+        out.writeInt(vocabulary.size());
+        for (int id = 0; id < vocabulary.size(); ++id) {
+            writeString(out, vocabulary.word(id));
+        }
+        out.writeInt(vocabulary.size());
+        for (int id = 0; id < vocabulary.size(); ++id) {
+            out.writeInt(vocabulary.frequency(id));
+        }
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+
+        in.get(bytes);
+
+        return new String(bytes, UTF8);
+    }
+
+    private static void readStrings(ByteBuffer in, List<String> strings) {
+        int size = in.getInt();
+
+        for (int i = 0; i < size; ++i) {
+            strings.add(readString(in));
+        }
+    }
+
+    private static Vocabulary readVocabulary(ByteBuffer in) {
+        String[] words = new String[in.getInt()];
+
+        for (int id = 0; id < words.length; ++id) {
+            words[id] = readString(in);
+        }
+
+        return new Vocabulary(words, readInts(in));
+    }
+
+    private static int[] readInts(ByteBuffer in) {
+        int[] values = new int[in.getInt()];
+
+        in.asIntBuffer().get(values);
+        in.position(in.position() + values.length * 4);
+
+        return values;
+    }
+
+    private static long[] readLongs(ByteBuffer in) {
+        long[] values = new long[in.getInt()];
+
+        in.asLongBuffer().get(values);
+        in.position(in.position() + values.length * 8);
+
+        return values;
+    }
+
+    /**
+     * The corpus' translations.
+     */
+    public List<Translation> getCorpus() {
+        return corpus;
+    }
+
+    public TokenizedCorpus getTokenizedCorpus() {
+        return tokenizedCorpus;
+    }
+
+    public PostingIndex getPostingIndex() {
+        return postingIndex;
+    }
+
+    /**
+     * The co-occurrence counts or null if the model did not have any.
+     */
+    public CooccurrenceTable getCooccurrences() {
+        return cooccurrences;
+    }
+}
@@ -1,12 +1,16 @@
 package lineup;
 
-import java.util.LinkedList;
 import java.util.List;
 
 /**
  * An N to N translation maps one or more sentences in one language to one or more
  * sentences in another languages. Those sentences express the same idea.
  *
+ * Whether the lists of sentences can be modified depends on the implementation. A Translation created
+ * with one of its public constructors has mutable lists. The translations of a TranslationStore, e.g. of
+ * a corpus returned by LineupCorpusReader#readCorpus or of a loaded model, have read-only views throwing
+ * an UnsupportedOperationException instead. Copy such a translation to change its sentences.
+ *
  * @author Markus Kahl
  */
 public interface NtoNTranslation {
@@ -1,5 +1,7 @@
 package lineup;
 
+import lineup.util.TopK;
+
 import java.util.*;
 
 public class PossibleTranslations {
@@ -15,11 +17,29 @@ public class PossibleTranslations {
         Collections.sort(getCandidates(), new Comparator<Candidate>() {
             @Override
             public int compare(Candidate c1, Candidate c2) {
-                return new Double(c2.getProbability()).compareTo(new Double(c1.getProbability()));
+                return Double.compare(c2.getProbability(), c1.getProbability());
             }
         });
     }
 
+    /**
+     * Retains only the n most likely candidates in descending order of their probability.
+     * This is the same as #sort followed by #prune without sorting all candidates.
+     */
+    public void retainMostLikely(int n) {
+        double[] probabilities = new double[getCandidates().size()];
+        Candidate[] cands = getCandidates().toArray(new Candidate[probabilities.length]);
+
+        for (int i = 0; i < cands.length; ++i) {
+            probabilities[i] = cands[i].getProbability();
+        }
+
+        getCandidates().clear();
+        for (int i : TopK.select(probabilities, n)) {
+            getCandidates().add(cands[i]);
+        }
+    }
+
     public void prune(int length) {
         Iterator<Candidate> i = getCandidates().iterator();
         int j = 0;
@@ -0,0 +1,498 @@
+package lineup;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Inverted index over a corpus mapping every term (see WordParser#getTerms) to the sorted ids,
+ * i.e. corpus indices, of the translations whose source or target sentences contain it.
+ */
+public class PostingIndex {
+
+    private static final int[] EMPTY = new int[0];
+
+    /**
+     * Marks words which cannot be looked up by a single term, see #wordTerm.
+     */
+    public static final int NO_TERM = -2;
+
+    private List<? extends NtoNTranslation> corpus;
+    private TokenizedCorpus tokenizedCorpus;
+
+    private int[][] sourcePostings;
+    private int[][] targetPostings;
+
+    /**
+     * Term id of every word of the source and target vocabulary, see #wordTerm.
+     */
+    private int[] sourceWordTerms;
+    private int[] targetWordTerms;
+
+    /**
+     * Weighted number of translations containing every source and target term, see #termCount.
+     */
+    private int[] sourceCounts;
+    private int[] targetCounts;
+
+    private Map<String, int[]> sourceScans = new ConcurrentHashMap<String, int[]>();
+    private Map<String, int[]> targetScans = new ConcurrentHashMap<String, int[]>();
+
+    /**
+     * Creates a new PostingIndex for the given corpus.
+     *
+     * @param corpus Corpus to index. The ids in the posting lists are the indices of the translations within it.
+     * @param tokenizedCorpus The corpus' terms.
+     */
+    public PostingIndex(List<? extends NtoNTranslation> corpus, TokenizedCorpus tokenizedCorpus) {
+        this.corpus = corpus instanceof RandomAccess ? corpus : new ArrayList<NtoNTranslation>(corpus);
+        this.tokenizedCorpus = tokenizedCorpus;
+
+        sourcePostings = index(tokenizedCorpus.getSource());
+        targetPostings = index(tokenizedCorpus.getTarget());
+        sourceWordTerms = wordTerms(null, tokenizedCorpus.getSource());
+        targetWordTerms = wordTerms(null, tokenizedCorpus.getTarget());
+        sourceCounts = termCounts(null, tokenizedCorpus.getSource(), 0);
+        targetCounts = termCounts(null, tokenizedCorpus.getTarget(), 0);
+    }
+
+    /**
+     * Restores a PostingIndex, e.g. after reading it from a file.
+     *
+     * @param corpus Indexed corpus.
+     * @param tokenizedCorpus The corpus' terms.
+     * @param sourcePostings Posting list of every source term by term id.
+     * @param targetPostings Posting list of every target term by term id.
+     */
+    public PostingIndex(List<? extends NtoNTranslation> corpus, TokenizedCorpus tokenizedCorpus,
+                        int[][] sourcePostings, int[][] targetPostings) {
+        this.corpus = corpus instanceof RandomAccess ? corpus : new ArrayList<NtoNTranslation>(corpus);
+        this.tokenizedCorpus = tokenizedCorpus;
+        this.sourcePostings = sourcePostings;
+        this.targetPostings = targetPostings;
+        this.sourceWordTerms = wordTerms(null, tokenizedCorpus.getSource());
+        this.targetWordTerms = wordTerms(null, tokenizedCorpus.getTarget());
+        this.sourceCounts = termCounts(null, tokenizedCorpus.getSource(), 0);
+        this.targetCounts = termCounts(null, tokenizedCorpus.getTarget(), 0);
+    }
+
+    /**
+     * Adds the translations which have been appended to the tokenized corpus to this index.
+     * Their ids are greater than all others, so they are simply appended to the posting lists.
+     * Cached results of corpus scans are discarded.
+     *
+     * @param corpus The corpus including the new translations.
+     * @param from Id of the first new translation.
+     */
+    public void append(List<? extends NtoNTranslation> corpus, int from) {
+        this.corpus = corpus instanceof RandomAccess ? corpus : new ArrayList<NtoNTranslation>(corpus);
+
+        sourcePostings = append(sourcePostings, getTokenizedCorpus().getSource(), from);
+        targetPostings = append(targetPostings, getTokenizedCorpus().getTarget(), from);
+        sourceWordTerms = wordTerms(sourceWordTerms, getTokenizedCorpus().getSource());
+        targetWordTerms = wordTerms(targetWordTerms, getTokenizedCorpus().getTarget());
+        sourceCounts = termCounts(sourceCounts, getTokenizedCorpus().getSource(), from);
+        targetCounts = termCounts(targetCounts, getTokenizedCorpus().getTarget(), from);
+
+        sourceScans.clear();
+        targetScans.clear();
+    }
+
+    /**
+     * Posting list of a term.
+     *
+     * @param term Normalized term (see WordParser#normalizeTerm).
+     * @param source If true look up the term in source sentences, otherwise in target sentences.
+     *
+     * @return Sorted ids of the translations containing the term. Must not be modified.
+     */
+    public int[] postings(String term, boolean source) {
+        return postings(termId(term, source), source);
+    }
+
+    /**
+     * Posting list of a term.
+     *
+     * @param termId Id of the term as given by #termId.
+     * @param source If true look up the term in source sentences, otherwise in target sentences.
+     *
+     * @return Sorted ids of the translations containing the term. Must not be modified.
+     */
+    public int[] postings(int termId, boolean source) {
+        return termId != -1 ? (source ? sourcePostings : targetPostings)[termId] : EMPTY;
+    }
+
+    /**
+     * The dense id of a term in this index.
+     *
+     * @param term Normalized term (see WordParser#normalizeTerm).
+     * @param source If true look up the term among source terms, otherwise among target terms.
+     *
+     * @return The term's id or -1 if it does not occur in the corpus.
+     */
+    public int termId(String term, boolean source) {
+        return getTerms(source).id(term);
+    }
+
+    /**
+     * The distinct terms of the source or target sentences.
+     */
+    public Vocabulary getTerms(boolean source) {
+        return getTokenizedCorpus().side(source).getTerms();
+    }
+
+    /**
+     * Finds all translations containing a word in the sense of WordParser#findWord.
+     *
+     * Words consisting of a single term are looked up directly. For other words the posting lists of their terms
+     * are intersected and the remaining translations are checked using the WordParser. Only words which cannot
+     * be matched literally require a scan of the whole corpus, whose results are kept.
+     *
+     * @param word Word to look for.
+     * @param source If true look for the word in source sentences, otherwise in target sentences.
+     *
+     * @return Sorted ids of the translations containing the word. Must not be modified.
+     */
+    public int[] documents(String word, boolean source) {
+        if (getWordParser().literalWordMatching() && getWordParser().isTerm(word)) {
+            return postings(getWordParser().normalizeTerm(word), source);
+        }
+
+        Map<String, int[]> scans = source ? sourceScans : targetScans;
+        int[] ids = scans.get(word);
+
+        if (ids == null) {
+            List<String> terms = getWordParser().getTerms(word);
+
+            if (getWordParser().literalWordMatching() && getWordParser().isLiteral(word) && !terms.isEmpty()) {
+                int[] candidates = postings(terms.get(0), source);
+
+                for (String term : terms.subList(1, terms.size())) {
+                    candidates = intersection(candidates, postings(term, source));
+                }
+                ids = filter(word, candidates, source);
+            } else {
+                ids = scan(word, source);
+            }
+            scans.put(word, ids);
+        }
+
+        return ids;
+    }
+
+    /**
+     * Finds all translations containing a word of the corpus' vocabulary, which yields the same result as
+     * #documents(String, boolean) for the word. Words consisting of a single term are looked up without
+     * hashing any strings.
+     *
+     * @param wordId Id of the word in the vocabulary of the given side.
+     * @param source If true look for the word in source sentences, otherwise in target sentences.
+     *
+     * @return Sorted ids of the translations containing the word. Must not be modified.
+     */
+    public int[] documents(int wordId, boolean source) {
+        int term = wordTerm(wordId, source);
+
+        if (term != NO_TERM) {
+            return postings(term, source);
+        }
+
+        return documents(getTokenizedCorpus().side(source).getVocabulary().word(wordId), source);
+    }
+
+    /**
+     * The term a word of the corpus' vocabulary is looked up by.
+     *
+     * @param wordId Id of the word in the vocabulary of the given side.
+     * @param source If true look up a source word, otherwise a target word.
+     *
+     * @return The id of the word's term, -1 if the term does not occur in the corpus or NO_TERM if the
+     *         word does not consist of a single term (or the WordParser does not match words literally).
+     */
+    public int wordTerm(int wordId, boolean source) {
+        return (source ? sourceWordTerms : targetWordTerms)[wordId];
+    }
+
+    /**
+     * Maps the words of a side's vocabulary to their terms.
+     *
+     * @param previous Terms of the words known so far or null. Words whose terms did not occur before
+     *                 are looked up again, as they may have been added since.
+     */
+    protected int[] wordTerms(int[] previous, TokenizedCorpus.Side side) {
+        Vocabulary words = side.getVocabulary();
+        int[] result = previous != null ? Arrays.copyOf(previous, words.size()) : new int[words.size()];
+        WordParser parser = getWordParser();
+
+        for (int id = 0; id < result.length; ++id) {
+            if (previous == null || id >= previous.length || result[id] == -1) {
+                String word = words.word(id);
+
+                result[id] = parser.literalWordMatching() && parser.isTerm(word) ?
+                        side.getTerms().id(parser.normalizeTerm(word)) : NO_TERM;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Sums up the weights of the translations containing every term of a side.
+     *
+     * @param previous Counts of the translations before the given one or null.
+     * @param from Id of the first translation to count.
+     */
+    protected int[] termCounts(int[] previous, TokenizedCorpus.Side side, int from) {
+        int[] result = previous != null ? Arrays.copyOf(previous, side.getTerms().size()) :
+                new int[side.getTerms().size()];
+
+        for (int id = from; id < getTokenizedCorpus().size(); ++id) {
+            int weight = getTokenizedCorpus().weight(id);
+
+            for (int i = side.termStart(id); i < side.termEnd(id); ++i) {
+                result[side.termId(i)] += weight;
+            }
+        }
+
+        return result;
+    }
+
+    protected int[] filter(String word, int[] candidates, boolean source) {
+        int[] ids = new int[candidates.length];
+        int size = 0;
+
+        for (int id : candidates) {
+            NtoNTranslation tr = getCorpus().get(id);
+
+            if (getWordParser().findWord(word, source ? tr.getSourceSentences() : tr.getTargetSentences())) {
+                ids[size++] = id;
+            }
+        }
+
+        return Arrays.copyOf(ids, size);
+    }
+
+    protected int[] scan(String word, boolean source) {
+        Postings ids = new Postings();
+        int id = 0;
+
+        for (NtoNTranslation tr : getCorpus()) {
+            if (getWordParser().findWord(word, source ? tr.getSourceSentences() : tr.getTargetSentences())) {
+                ids.add(id);
+            }
+            ++id;
+        }
+
+        return ids.toArray();
+    }
+
+    protected int[][] index(TokenizedCorpus.Side side) {
+        Postings[] postings = new Postings[side.getTerms().size()];
+        int[][] result = new int[postings.length][];
+
+        for (int id = 0; id < getTokenizedCorpus().size(); ++id) {
+            for (int i = side.termStart(id); i < side.termEnd(id); ++i) {
+                int term = side.termId(i);
+
+                if (postings[term] == null) {
+                    postings[term] = new Postings();
+                }
+                postings[term].add(id);
+            }
+        }
+
+        for (int term = 0; term < postings.length; ++term) {
+            result[term] = postings[term].toArray();
+        }
+
+        return result;
+    }
+
+    protected int[][] append(int[][] postings, TokenizedCorpus.Side side, int from) {
+        Postings[] added = new Postings[side.getTerms().size()];
+        int[][] result = Arrays.copyOf(postings, added.length);
+
+        for (int id = from; id < getTokenizedCorpus().size(); ++id) {
+            for (int i = side.termStart(id); i < side.termEnd(id); ++i) {
+                int term = side.termId(i);
+
+                if (added[term] == null) {
+                    added[term] = new Postings();
+                }
+                added[term].add(id);
+            }
+        }
+
+        for (int term = 0; term < added.length; ++term) {
+            if (added[term] != null) {
+                int[] ids = added[term].toArray();
+
+                if (result[term] == null) {
+                    result[term] = ids;
+                } else {
+                    int[] merged = Arrays.copyOf(result[term], result[term].length + ids.length);
+
+                    System.arraycopy(ids, 0, merged, result[term].length, ids.length);
+                    result[term] = merged;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Number of translations of the original corpus a posting list stands for, i.e. the sum of the weights
+     * of its translations (see TokenizedCorpus#weight).
+     */
+    public int count(int[] ids) {
+        return getTokenizedCorpus().weight(ids);
+    }
+
+    /**
+     * Number of translations of the original corpus containing a term, which is the same as #count of
+     * its posting list but computed in advance.
+     *
+     * @param termId Id of the term as given by #termId.
+     * @param source If true count source sentences, otherwise target sentences.
+     */
+    public int termCount(int termId, boolean source) {
+        return termId != -1 ? (source ? sourceCounts : targetCounts)[termId] : 0;
+    }
+
+    /**
+     * Number of translations of the original corpus containing a word, i.e. #count of #documents(String, boolean).
+     * Words consisting of a single term are counted without summing up weights.
+     */
+    public int documentCount(String word, boolean source) {
+        if (getWordParser().literalWordMatching() && getWordParser().isTerm(word)) {
+            return termCount(termId(getWordParser().normalizeTerm(word), source), source);
+        }
+
+        return count(documents(word, source));
+    }
+
+    /**
+     * Number of translations of the original corpus containing a word of the corpus' vocabulary,
+     * i.e. #count of #documents(int, boolean).
+     */
+    public int documentCount(int wordId, boolean source) {
+        int term = wordTerm(wordId, source);
+
+        if (term != NO_TERM) {
+            return termCount(term, source);
+        }
+
+        return count(documents(wordId, source));
+    }
+
+    /**
+     * Number of translations of the original corpus two sorted posting lists have in common, i.e. the sum
+     * of the weights of their common translations.
+     */
+    public int intersectionCount(int[] a, int[] b) {
+        return intersectionSize(a, b, getTokenizedCorpus().isWeighted() ? getTokenizedCorpus() : null);
+    }
+
+    /**
+     * Counts the ids two sorted posting lists have in common.
+     */
+    public static int intersectionSize(int[] a, int[] b) {
+        return intersectionSize(a, b, null);
+    }
+
+    /**
+     * Sums up the weights of the ids two sorted posting lists have in common.
+     *
+     * @param weights Corpus to look up the weights in or null to count every id once.
+     */
+    protected static int intersectionSize(int[] a, int[] b, TokenizedCorpus weights) {
+        if (a.length > b.length) {
+            return intersectionSize(b, a, weights);
+        }
+
+        int count = 0;
+
+        if (a.length * 8 < b.length) { // very different lengths, search the long list instead of walking it
+            int from = 0;
+            for (int id : a) {
+                int i = Arrays.binarySearch(b, from, b.length, id);
+                if (i >= 0) {
+                    count += weights != null ? weights.weight(id) : 1;
+                    from = i + 1;
+                } else {
+                    from = -i - 1;
+                }
+            }
+        } else {
+            int i = 0, j = 0;
+            while (i < a.length && j < b.length) {
+                if (a[i] < b[j]) {
+                    ++i;
+                } else if (a[i] > b[j]) {
+                    ++j;
+                } else {
+                    count += weights != null ? weights.weight(a[i]) : 1;
+                    ++i;
+                    ++j;
+                }
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Computes the ids two sorted posting lists have in common.
+     */
+    public static int[] intersection(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, size = 0;
+
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                ++i;
+            } else if (a[i] > b[j]) {
+                ++j;
+            } else {
+                result[size++] = a[i];
+                ++i;
+                ++j;
+            }
+        }
+
+        return Arrays.copyOf(result, size);
+    }
+
+    public List<? extends NtoNTranslation> getCorpus() {
+        return corpus;
+    }
+
+    public TokenizedCorpus getTokenizedCorpus() {
+        return tokenizedCorpus;
+    }
+
+    public WordParser getWordParser() {
+        return getTokenizedCorpus().getWordParser();
+    }
+
+    /**
+     * Growable posting list. Ids have to be added in ascending order, duplicates are ignored.
+     */
+    protected static class Postings {
+        private int[] ids = new int[4];
+        private int size = 0;
+
+        public void add(int id) {
+            if (size > 0 && ids[size - 1] == id)
+                return;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        public int[] toArray() {
+            return Arrays.copyOf(ids, size);
+        }
+    }
+}
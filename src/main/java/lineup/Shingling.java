@@ -2,8 +2,11 @@ package lineup;
 
 import lineup.util.Fun;
 
-import java.util.LinkedList;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.RandomAccess;
 import java.util.regex.Matcher;
 
 /**
@@ -15,7 +18,7 @@ public class Shingling {
 
     private int w;
     private String input;
-    private List<Shingles> shingles;
+    private List<String> words;
     private WordParser wordParser;
 
     /**
@@ -31,6 +34,18 @@ public class Shingling {
         this.wordParser = wordParser;
     }
 
+    /**
+     * Creates a new Shingling of words which have been extracted already.
+     *
+     * @param w N-gram dimension (i.e. N)
+     * @param words Words in the order of their occurrence.
+     * @param wordParser WordParser the words have been extracted with, which is used by #getShingles(String).
+     */
+    public Shingling(int w, List<String> words, WordParser wordParser) {
+        this(w, Fun.mkString(words, " "), wordParser);
+        this.words = words;
+    }
+
     /**
      * Adds to a list all n-grams (size w of this Shingling) of a given word.
      *
@@ -53,7 +68,7 @@ public class Shingling {
      * @return A list of shingles, one for each word in the input and in the order the words occur within which.
      */
     public List<Shingles> getShingles(String input) {
-        List<Shingles> shingles = new LinkedList<Shingles>();
+        List<Shingles> shingles = new ArrayList<Shingles>();
         Matcher m = getWordParser().getWordPattern().matcher(input);
 
         while (m.find()) {
@@ -69,6 +84,15 @@ public class Shingling {
      * @see #getShingles(String)
      */
     public List<Shingles> getShingles() {
+        if (words != null) {
+            List<Shingles> shingles = new ArrayList<Shingles>();
+
+            for (String word : words) {
+                shingles.add(new Shingles(word));
+            }
+            return shingles;
+        }
+
         return getShingles(getInput());
     }
 
@@ -98,16 +122,66 @@ public class Shingling {
         return wordParser;
     }
 
+    /**
+     * Key of an n-gram. N-grams of up to 4 chars are packed into the key, so that different n-grams get
+     * different keys. Longer ones are hashed to 64 bits.
+     *
+     * @param word Word containing the n-gram.
+     * @param from Index of the n-gram's first char.
+     * @param to Index after the n-gram's last char.
+     */
+    public static long key(String word, int from, int to) {
+        long key = 0;
+
+        if (to - from <= 4) {
+            for (int i = from; i < to; ++i) {
+                key = (key << 16) | word.charAt(i);
+            }
+        } else {
+            key = 0xcbf29ce484222325L;
+            for (int i = from; i < to; ++i) {
+                key = (key ^ word.charAt(i)) * 0x100000001b3L;
+            }
+        }
+
+        return key;
+    }
+
     /**
      * List of n-grams of a word.
+     *
+     * The n-grams are kept as their keys (see #key) in a sorted array and only created as strings when they
+     * are accessed as list elements, so that comparing shingles does not allocate anything.
      */
-    public class Shingles extends LinkedList<String> {
+    public class Shingles extends AbstractList<String> implements RandomAccess {
         private String word;
+        private long[] keys;
 
         public Shingles(String word) {
             this.word = word;
 
-            addShingles(this, word);
+            if (word.length() < w) {
+                keys = new long[] { key(word, 0, word.length()) };
+            } else {
+                keys = new long[word.length() - w + 1];
+                for (int i = 0; i < keys.length; ++i) {
+                    keys[i] = key(word, i, i + w);
+                }
+                Arrays.sort(keys);
+            }
+        }
+
+        @Override
+        public String get(int index) {
+            if (index < 0 || index >= size())
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+
+            return word.length() < w ? word : word.substring(index, index + w);
+        }
+
+        @Override
+        public int size() {
+            return keys.length;
         }
 
         public boolean containsIgnoreCase(String token) {
@@ -121,29 +195,52 @@ public class Shingling {
         /**
          * This shingles' resemblance with another one.
          * See Jaccard coefficient.
+         *
+         * The intersection are this' n-grams (with repetitions) which the other shingles contain as well.
+         * The union are this' n-grams counted twice plus the distinct n-grams of the other shingles which this
+         * does not contain. Both are counted merging the sorted keys.
          */
         public double resemblance(Shingles shingles) {
-            return intersection(shingles).size() / (double) union(shingles).size();
-        }
-
-        protected Shingles intersection(Shingles shingles) {
-            Shingles ret = new Shingles(getWord());
-            ret.retainAll(shingles);
-
-            return ret;
-        }
-
-        protected Shingles union(Shingles shingles) {
-            Shingles ret = new Shingles(getWord());
-
-            ret.addAll(Shingles.this);
-            for (String str : shingles) {
-                if (!ret.contains(str)) {
-                    ret.add(str);
+            long[] a = keys;
+            long[] b = shingles.keys;
+            int intersection = 0;
+            int others = 0;
+            int i = 0, j = 0;
+
+            while (i < a.length && j < b.length) {
+                if (a[i] < b[j]) {
+                    ++i;
+                } else if (a[i] > b[j]) {
+                    if (j == 0 || b[j] != b[j - 1]) {
+                        ++others;
+                    }
+                    ++j;
+                } else {
+                    long key = a[i];
+
+                    while (i < a.length && a[i] == key) {
+                        ++intersection;
+                        ++i;
+                    }
+                    while (j < b.length && b[j] == key) {
+                        ++j;
+                    }
+                }
+            }
+            for (; j < b.length; ++j) {
+                if (j == 0 || b[j] != b[j - 1]) {
+                    ++others;
                 }
             }
 
-            return ret;
+            return intersection / (double) (2 * a.length + others);
+        }
+
+        /**
+         * Sorted keys of the n-grams including repeated ones. Must not be modified.
+         */
+        public long[] getKeys() {
+            return keys;
         }
 
         public String getWord() {
@@ -1,37 +1,46 @@
 package lineup;
 
+import lineup.TokenizedCorpus.Tokens;
 import lineup.splitters.Sentences;
+import lineup.util.LruCache;
+import lineup.util.MinHash;
 import lineup.util.Relation;
+import lineup.util.TopDoubles;
+import lineup.util.TopK;
 import lineup.util.Tuple;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.regex.Matcher;
 
 import static lineup.util.Fun.mkString;
-import static lineup.util.Fun.take;
 
 /**
  * Produces word alignments based on a statistical model which works using a sentence-aligned corpus.
  *
  * @author Markus Kahl
  */
-public class StatAlign<T extends NtoNTranslation> implements Aligner {
+public class StatAlign<T extends NtoNTranslation> implements Aligner, AutoCloseable {
 
     private List<T> corpus;
+    private boolean ownsCorpus;
 
-    private Map<String, Integer> sourceWords;
-    private Map<String, Integer> targetWords;
-    private final int sourceWordCount;
-    private final int targetWordCount;
+    private TokenizedCorpus tokenizedCorpus;
+    private Vocabulary sourceVocabulary;
+    private Vocabulary targetVocabulary;
+    private DeclensionIndex sourceDeclensionIndex;
+    private DeclensionIndex targetDeclensionIndex;
+    private int sourceWordCount;
+    private int targetWordCount;
 
-    private List<String> sourceBlacklist = new LinkedList<String>();
-    private List<String> targetBlacklist = new LinkedList<String>();
+    private List<String> sourceBlacklist = new CopyOnWriteArrayList<String>();
+    private List<String> targetBlacklist = new CopyOnWriteArrayList<String>();
 
-    private Map<String, List<NtoNTranslation>> targetGivenSourceCache = new ConcurrentHashMap<String, List<NtoNTranslation>>();
-    private Map<String, List<NtoNTranslation>> sourceGivenTargetCache = new ConcurrentHashMap<String, List<NtoNTranslation>>();
-    private Map<String, Set<String>> srcDeclCache = new HashMap<String, Set<String>>();
-    private Map<String, Set<String>> tgtDeclCache = new HashMap<String, Set<String>>();
+    private PostingIndex postingIndex;
+    private volatile CooccurrenceTable cooccurrences;
+    private LruCache<String, Set<String>> srcDeclCache = new LruCache<String, Set<String>>(50000);
+    private LruCache<String, Set<String>> tgtDeclCache = new LruCache<String, Set<String>>(50000);
 
     private WordParser wordParser;
     private CognateModel cognateModel = new CognateModel(4, 0.10);
@@ -39,31 +48,71 @@ public class StatAlign<T extends NtoNTranslation> implements Aligner {
     private int candidateLimit = 6;
     private int pruneMatches = 3;
 
-    ExecutorService exec = Executors.newFixedThreadPool(
-        Runtime.getRuntime().availableProcessors(),
-        new ThreadFactory() {
-            public Thread newThread(Runnable r) {
-                Thread thread = new Thread(r);
-                thread.setDaemon(true);
+    private final ExecutorService exec;
+    private final boolean ownsExecutor;
 
-                return thread;
-            }
-        });
+    /**
+     * Set while a thread aligns a part of a batch (see #alignAll), whose translations are already aligned
+     * in parallel, so that their words are not distributed to the executor once more.
+     */
+    private static final ThreadLocal<Boolean> batchAlignment = new ThreadLocal<Boolean>();
 
     /**
      * Creates a new StatAlign instance whose statistical model is based on the given corpus.
      *
      * @param corpus Corpus to build model on.
      * @param wordParser WordParser to extract words from sentences.
+     * @param executor ExecutorService used to compute alignments in parallel. It may be shared with other
+     *                 instances and is not shut down when this instance is closed.
+     */
+    public StatAlign(List<T> corpus, WordParser wordParser, ExecutorService executor) {
+        this(corpus, wordParser, executor, false);
+    }
+
+    /**
+     * Creates a new StatAlign instance using its own fixed thread pool, which is shut down by #close.
+     *
+     * @param corpus Corpus to build model on.
+     * @param wordParser WordParser to extract words from sentences.
      */
     public StatAlign(List<T> corpus, WordParser wordParser) {
+        this(corpus, wordParser, newDefaultExecutor(), true);
+    }
+
+    protected StatAlign(List<T> corpus, WordParser wordParser, ExecutorService executor, boolean ownsExecutor) {
+        this(corpus, wordParser, executor, ownsExecutor, null);
+    }
+
+    /**
+     * Creates a new StatAlign instance whose model is either computed from the given corpus or,
+     * if given, taken from a snapshot of the same corpus.
+     */
+    private StatAlign(List<T> corpus, WordParser wordParser, ExecutorService executor, boolean ownsExecutor,
+                      ModelSnapshot snapshot) {
+        if (executor == null)
+            throw new IllegalArgumentException("StatAlign requires an executor.");
+
         this.corpus = corpus;
         this.wordParser = wordParser;
+        this.exec = executor;
+        this.ownsExecutor = ownsExecutor;
 
-        computeWordDistribution();
+        if (snapshot == null) {
+            computeWordDistribution();
+            postingIndex = new PostingIndex(corpus, getTokenizedCorpus());
+        } else {
+            tokenizedCorpus = snapshot.getTokenizedCorpus();
+            sourceVocabulary = tokenizedCorpus.getSource().getVocabulary();
+            targetVocabulary = tokenizedCorpus.getTarget().getVocabulary();
+            postingIndex = snapshot.getPostingIndex();
+            cooccurrences = snapshot.getCooccurrences();
+            ownsCorpus = true;
+        }
+        sourceDeclensionIndex = new DeclensionIndex(getSourceVocabulary(), wordParser);
+        targetDeclensionIndex = new DeclensionIndex(getTargetVocabulary(), wordParser);
 
-        sourceWordCount = sumValues(getSourceWords());
-        targetWordCount = sumValues(getTargetWords());
+        sourceWordCount = (int) getSourceVocabulary().total();
+        targetWordCount = (int) getTargetVocabulary().total();
 
         initBlacklists();
     }
@@ -72,6 +121,140 @@ public class StatAlign<T extends NtoNTranslation> implements Aligner {
         this(corpus, WordParser.instance);
     }
 
+    /**
+     * Loads a model saved with #save.
+     *
+     * @param file Snapshot to load.
+     * @param wordParser WordParser the model has been created with.
+     * @param executor ExecutorService used to compute alignments in parallel. It is not shut down by #close.
+     */
+    public static StatAlign<Translation> load(File file, WordParser wordParser, ExecutorService executor)
+            throws IOException {
+        ModelSnapshot snapshot = ModelSnapshot.read(file, wordParser);
+
+        return new StatAlign<Translation>(snapshot.getCorpus(), wordParser, executor, false, snapshot);
+    }
+
+    /**
+     * Loads a model saved with #save using its own thread pool.
+     *
+     * @param file Snapshot to load.
+     * @param wordParser WordParser the model has been created with.
+     */
+    public static StatAlign<Translation> load(File file, WordParser wordParser) throws IOException {
+        ModelSnapshot snapshot = ModelSnapshot.read(file, wordParser);
+
+        return new StatAlign<Translation>(snapshot.getCorpus(), wordParser, newDefaultExecutor(), true, snapshot);
+    }
+
+    public static StatAlign<Translation> load(File file) throws IOException {
+        return load(file, WordParser.instance);
+    }
+
+    /**
+     * Builds a model from shards of a corpus which have been tokenized separately,
+     * e.g. by several processes, using its own thread pool.
+     *
+     * @param shards Shard files written by ModelSnapshot#writeShard in corpus order.
+     * @param wordParser WordParser the shards have been created with.
+     */
+    public static StatAlign<Translation> merge(List<File> shards, WordParser wordParser) throws IOException {
+        ModelSnapshot snapshot = ModelSnapshot.merge(shards, wordParser);
+
+        return new StatAlign<Translation>(snapshot.getCorpus(), wordParser, newDefaultExecutor(), true, snapshot);
+    }
+
+    /**
+     * Builds a model from translations while they are read, e.g. from a StreamingCorpusReader, so that the
+     * corpus never has to be held as a list of Translation instances. The translations are copied into a
+     * TranslationStore and added to the model in batches (see #addTranslations), which results in the same
+     * model as building it from the whole corpus at once. Uses its own thread pool.
+     *
+     * @param corpus Translations to build the model on.
+     * @param wordParser WordParser to extract words from sentences.
+     * @param batchSize Number of translations to read before adding them to the model.
+     */
+    public static StatAlign<Translation> build(Iterator<? extends Translation> corpus, WordParser wordParser,
+                                               int batchSize) {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+
+        TranslationStore store = new TranslationStore();
+
+        while (store.size() < batchSize && corpus.hasNext()) {
+            store.append(corpus.next());
+        }
+
+        StatAlign<Translation> model = new StatAlign<Translation>(store, wordParser, newDefaultExecutor(), true);
+        List<Translation> batch = new ArrayList<Translation>(batchSize);
+
+        model.ownsCorpus = true;
+        while (corpus.hasNext()) {
+            batch.add(corpus.next());
+            if (batch.size() == batchSize || !corpus.hasNext()) {
+                model.addTranslations(batch);
+                batch.clear();
+            }
+        }
+        store.trimToSize();
+
+        return model;
+    }
+
+    /**
+     * Saves this model including its corpus and co-occurrences, if built, to a file.
+     * Loading it with #load is much faster than computing it again.
+     *
+     * @see ModelSnapshot
+     */
+    public void save(File file) throws IOException {
+        ModelSnapshot.write(this, file);
+    }
+
+    /**
+     * Creates a fixed thread pool of daemon threads, one for each available processor.
+     */
+    public static ExecutorService newDefaultExecutor() {
+        return Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(),
+            new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r);
+                    thread.setDaemon(true);
+
+                    return thread;
+                }
+            });
+    }
+
+    /**
+     * Creates an executor starting a new virtual thread for each task, so that instances sharing it
+     * share the JVM's carrier threads instead of each occupying a pool of platform threads.
+     * Runtimes without virtual threads get the default executor.
+     *
+     * @see #newDefaultExecutor()
+     */
+    public static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            return newDefaultExecutor();
+        } catch (Exception e) {
+            System.out.println("[warning] virtual threads unavailable: " + e.getMessage());
+            return newDefaultExecutor();
+        }
+    }
+
+    /**
+     * Shuts down the executor if this instance created it itself. An executor passed to the constructor
+     * is left running, because it may be shared.
+     */
+    public void close() {
+        if (ownsExecutor) {
+            exec.shutdown();
+        }
+    }
+
     protected void initBlacklists() {
         if (corpus == null || corpus.isEmpty())
             throw new IllegalArgumentException("StatAlign requires a non-empty corpus.");
@@ -100,11 +283,6 @@ public class StatAlign<T extends NtoNTranslation> implements Aligner {
 
         for (int i = 1; i < length; ++i) {
             pts.addAll(associate(startIndex + i, getCandidateLimit()));
-            try {
-                Thread.sleep(250); // concurrency bug (during evaluation) workaround
-            } catch (InterruptedException e) {
-                System.out.println("[warning] " + e.getMessage());
-            }
         }
 
         StringBuilder de = new StringBuilder();
@@ -137,11 +315,28 @@ public class StatAlign<T extends NtoNTranslation> implements Aligner {
      * @return For each word in the source sentences of the translation a list of possible translations.
      */
     public List<PossibleTranslations> associate(NtoNTranslation translation, int limit, int prune, boolean retainMostLikely) {
-        List<PossibleTranslations> matches = matches(translation, limit);
-        Set<Relation> relations = findRelatedWords(translation.getSourceSentences(), translation.getTargetSentences());
+        return associate(
+                tokenize(translation.getSourceSentences(), true),
+                tokenize(translation.getTargetSentences(), false),
+                limit, prune, retainMostLikely);
+    }
+
+    /**
+     * Computes a word alignment for a tokenized translation.
+     *
+     * @see #associate(NtoNTranslation, int, int, boolean)
+     */
+    protected List<PossibleTranslations> associate(
+            Tokens sources, Tokens targets, int limit, int prune, boolean retainMostLikely) {
+
+        List<PossibleTranslations> matches = matches(sources, targets, limit);
+        Set<Relation> relations = findRelatedWords(sources, targets);
         Map<String, Integer> targetWordCounts = new HashMap<String, Integer>();
 
-        addToDistribution(translation.getTargetSentences(), targetWordCounts);
+        for (int i = 0; i < targets.size(); ++i) {
+            Integer count = targetWordCounts.get(targets.word(i));
+            targetWordCounts.put(targets.word(i), count != null ? count + 1 : 1);
+        }
 
         for (PossibleTranslations pt : matches) {
             for (Relation rel : relations) {
@@ -158,12 +353,10 @@ public class StatAlign<T extends NtoNTranslation> implements Aligner {
                 }
             }
 
-            pt.sort();
-
-            if (!retainMostLikely) {
-                if (prune < limit && prune != -1) {
-                    pt.prune(prune);
-                }
+            if (!retainMostLikely && prune < limit && prune != -1) {
+                pt.retainMostLikely(prune);
+            } else {
+                pt.sort();
             }
         }
 
@@ -200,7 +393,244 @@ public class StatAlign<T extends NtoNTranslation> implements Aligner {
     }
 
     public List<PossibleTranslations> associate(int index, int limit, int prune, boolean retainMostLikely) {
-        return associate(getCorpus().get(index), limit, prune, retainMostLikely);
+        return associate(
+                getTokenizedCorpus().tokens(index, true),
+                getTokenizedCorpus().tokens(index, false),
+                limit, prune, retainMostLikely);
+    }
+
+    /**
+     * Computes word alignments for a range of the corpus' translations in parallel.
+     * Translations rather than single words are distributed among the threads,
+     * which balance their load by stealing each other's work.
+     *
+     * @param fromIndex Index of the first translation to align.
+     * @param toIndex Index after the last translation to align.
+     * @return One alignment per translation in corpus order.
+     */
+    public List<List<PossibleTranslations>> associateAll(int fromIndex, int toIndex) {
+        return associateAll(fromIndex, toIndex, getCandidateLimit(), getPruneMatches(), true);
+    }
+
+    /**
+     * Computes word alignments for a range of the corpus' translations in parallel.
+     *
+     * @see #associateAll(int, int)
+     * @see #associate(int, int, int, boolean)
+     */
+    public List<List<PossibleTranslations>> associateAll(
+            final int fromIndex, int toIndex, final int limit, final int prune, final boolean retainMostLikely) {
+
+        checkRange(fromIndex, toIndex);
+
+        return alignAll(new Alignment<List<PossibleTranslations>>(toIndex - fromIndex) {
+            protected List<PossibleTranslations> align(int index) {
+                return associate(fromIndex + index, limit, prune, retainMostLikely);
+            }
+        });
+    }
+
+    /**
+     * Computes word alignments for the given translations in parallel.
+     *
+     * @return One alignment per translation in iteration order.
+     * @see #associateAll(int, int)
+     */
+    public List<List<PossibleTranslations>> associateAll(Iterable<? extends NtoNTranslation> translations) {
+        return associateAll(translations, getCandidateLimit(), getPruneMatches(), true);
+    }
+
+    /**
+     * Computes word alignments for the given translations in parallel.
+     *
+     * @see #associateAll(Iterable)
+     * @see #associate(NtoNTranslation, int, int, boolean)
+     */
+    public List<List<PossibleTranslations>> associateAll(
+            Iterable<? extends NtoNTranslation> translations,
+            final int limit, final int prune, final boolean retainMostLikely) {
+
+        final List<NtoNTranslation> list = new ArrayList<NtoNTranslation>();
+
+        for (NtoNTranslation tr : translations) {
+            list.add(tr);
+        }
+
+        return alignAll(new Alignment<List<PossibleTranslations>>(list.size()) {
+            protected List<PossibleTranslations> align(int index) {
+                return associate(list.get(index), limit, prune, retainMostLikely);
+            }
+        });
+    }
+
+    /**
+     * Aligns translations while they are read, e.g. from a StreamingCorpusReader. They are aligned
+     * in parallel batches, so that at most one batch of translations and their alignments is held at a time.
+     *
+     * @param translations Translations to align.
+     * @param batchSize Number of translations to align at once.
+     * @return Iterator over one alignment per translation in iteration order, computing them on demand.
+     */
+    public Iterator<List<PossibleTranslations>> associateAll(
+            final Iterator<? extends NtoNTranslation> translations, final int batchSize) {
+
+        if (batchSize < 1)
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+
+        return new Iterator<List<PossibleTranslations>>() {
+            private Iterator<List<PossibleTranslations>> batch = Collections.<List<PossibleTranslations>>emptyList().iterator();
+
+            public boolean hasNext() {
+                if (!batch.hasNext() && translations.hasNext()) {
+                    List<NtoNTranslation> next = new ArrayList<NtoNTranslation>(batchSize);
+
+                    while (next.size() < batchSize && translations.hasNext()) {
+                        next.add(translations.next());
+                    }
+                    batch = associateAll(next).iterator();
+                }
+
+                return batch.hasNext();
+            }
+
+            public List<PossibleTranslations> next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+
+                return batch.next();
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Computes the word alignment of a translation of the corpus in its compact form.
+     *
+     * @see #associate(int)
+     */
+    public WordAlignment wordAlignment(int index) {
+        return compact(associate(index));
+    }
+
+    /**
+     * Computes the word alignment of a translation in its compact form.
+     *
+     * @see #associate(NtoNTranslation)
+     */
+    public WordAlignment wordAlignment(NtoNTranslation translation) {
+        return compact(associate(translation));
+    }
+
+    /**
+     * Computes compact word alignments for a range of the corpus' translations in parallel.
+     * Other than #associateAll this only keeps a few arrays per translation, which makes it
+     * suitable for aligning large parts of the corpus.
+     *
+     * @param fromIndex Index of the first translation to align.
+     * @param toIndex Index after the last translation to align.
+     * @return One alignment per translation in corpus order.
+     */
+    public List<WordAlignment> wordAlignments(final int fromIndex, int toIndex) {
+        checkRange(fromIndex, toIndex);
+
+        return alignAll(new Alignment<WordAlignment>(toIndex - fromIndex) {
+            protected WordAlignment align(int index) {
+                return wordAlignment(fromIndex + index);
+            }
+        });
+    }
+
+    protected WordAlignment compact(List<PossibleTranslations> alignment) {
+        return new WordAlignment(alignment, getSourceVocabulary(), getTargetVocabulary());
+    }
+
+    private void checkRange(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > getCorpus().size() || fromIndex > toIndex)
+            throw new IndexOutOfBoundsException("Invalid range: " + fromIndex + " to " + toIndex);
+    }
+
+    /**
+     * Aligns translations in parallel using the executor. They are split into more ranges than there are
+     * processors, as translations differ a lot in length.
+     */
+    protected <R> List<R> alignAll(Alignment<R> alignment) {
+        int ranges = Math.min(alignment.size(), Runtime.getRuntime().availableProcessors() * 8);
+        List<AlignmentTask<R>> tasks = new ArrayList<AlignmentTask<R>>(ranges);
+
+        for (int i = 0; i < ranges; ++i) {
+            tasks.add(new AlignmentTask<R>(alignment,
+                    (int) ((long) alignment.size() * i / ranges), (int) ((long) alignment.size() * (i + 1) / ranges)));
+        }
+
+        try {
+            for (Future<Void> task : exec.invokeAll(tasks)) {
+                task.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while aligning translations", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Could not align translations", e.getCause());
+        }
+
+        return alignment.getResults();
+    }
+
+    /**
+     * Alignment of a number of translations whose results are collected in order.
+     *
+     * @param <R> Type of a single translation's alignment.
+     */
+    protected abstract static class Alignment<R> {
+        private R[] results;
+
+        @SuppressWarnings("unchecked")
+        public Alignment(int size) {
+            results = (R[]) new Object[size];
+        }
+
+        /**
+         * Aligns the translation with the given position.
+         */
+        protected abstract R align(int index);
+
+        public int size() {
+            return results.length;
+        }
+
+        public List<R> getResults() {
+            return Arrays.asList(results);
+        }
+    }
+
+    /**
+     * Aligns a range of an Alignment's translations one after the other.
+     */
+    protected static class AlignmentTask<R> implements Callable<Void> {
+        private Alignment<R> alignment;
+        private int from;
+        private int to;
+
+        public AlignmentTask(Alignment<R> alignment, int from, int to) {
+            this.alignment = alignment;
+            this.from = from;
+            this.to = to;
+        }
+
+        public Void call() {
+            batchAlignment.set(Boolean.TRUE);
+            try {
+                for (int index = from; index < to; ++index) {
+                    alignment.results[index] = alignment.align(index);
+                }
+            } finally {
+                batchAlignment.remove();
+            }
+            return null;
+        }
     }
 
     /**
@@ -216,23 +646,48 @@ public class StatAlign<T extends NtoNTranslation> implements Aligner {
      * @return A list of PossibleTranslations instances containing one instance for each word in the translation's source sentences.
      */
     public List<PossibleTranslations> matches(NtoNTranslation translation, int limit) {
+        return matches(
+                tokenize(translation.getSourceSentences(), true),
+                tokenize(translation.getTargetSentences(), false),
+                limit);
+    }
+
+    /**
+     * Computes basic word alignment for a tokenized translation.
+     *
+     * @see #matches(NtoNTranslation, int)
+     */
+    protected List<PossibleTranslations> matches(Tokens sources, Tokens targets, int limit) {
         List<PossibleTranslations> result = new LinkedList<PossibleTranslations>();
-        List<PossibleTranslations> forth = possibleTranslations(translation, limit != -1 ? limit : getCandidateLimit());
-        List<PossibleTranslations> back = reversePossibleTranslations(translation, limit != -1 ? limit : getCandidateLimit());
+        List<PossibleTranslations> forth = possibleTranslations(
+                sources, targets, limit != -1 ? limit : getCandidateLimit(), false);
+        List<PossibleTranslations> back = possibleTranslations(
+                targets, sources, limit != -1 ? limit : getCandidateLimit(), true);
+
+        // index backward candidates by (target word, source word); only the first possible translations
+        // of a target word and the first of its candidates with a given word are considered
+        Set<String> backWords = new HashSet<String>();
+        Map<Relation, Candidate> backCandidates = new HashMap<Relation, Candidate>();
+
+        for (PossibleTranslations ptBack : back) {
+            if (backWords.add(ptBack.getSourceWord())) {
+                for (Candidate cBack : ptBack.getCandidates()) {
+                    Relation key = new Relation(ptBack.getSourceWord(), cBack.getWord());
+
+                    if (!backCandidates.containsKey(key)) {
+                        backCandidates.put(key, cBack);
+                    }
+                }
+            }
+        }
 
         for (PossibleTranslations ptForth : forth) {
             List<Candidate> candidates = new LinkedList<Candidate>();
             for (Candidate cForth : ptForth.getCandidates()) {
-                cross: for (PossibleTranslations ptBack : back) {
-                    if (ptBack.getSourceWord().equals(cForth.getWord())) {
-                        for (Candidate cBack : ptBack.getCandidates()) {
-                            if (ptForth.getSourceWord().equals(cBack.getWord())) {
-                                candidates.add(new Candidate(ptBack.getSourceWord(), cForth.getProbability() * cBack.getProbability()));
-                                break cross;
-                            }
-                        }
-                        break;
-                    }
+                Candidate cBack = backCandidates.get(new Relation(cForth.getWord(), ptForth.getSourceWord()));
+
+                if (cBack != null) {
+                    candidates.add(new Candidate(cForth.getWord(), cForth.getProbability() * cBack.getProbability()));
                 }
             }
             PossibleTranslations matches = new PossibleTranslations(ptForth.getSourceWord(), candidates);
@@ -249,7 +704,7 @@ public class StatAlign<T extends NtoNTranslation> implements Aligner {
     }
 
     public List<PossibleTranslations> matches(int index, int limit) {
-        return matches(getCorpus().get(index), limit);
+        return matches(getTokenizedCorpus().tokens(index, true), getTokenizedCorpus().tokens(index, false), limit);
     }
 
     /**
@@ -257,17 +712,11 @@ public class StatAlign<T extends NtoNTranslation> implements Aligner {
      *
      * @param word The word to compute declensions for.
      * @param includeSource If true include the input word in the result.
+     *
+     * @return An unmodifiable set of declensions.
      */
     public Set<String> sourceDeclensions(String word, boolean includeSource) {
-        if (includeSource && srcDeclCache.containsKey(word)) {
-            return srcDeclCache.get(word);
-        } else {
-            Set<String> decls = declensions(word, getSourceWords().keySet(), includeSource);
-            if (!includeSource) {
-                srcDeclCache.put(word, decls);
-            }
-            return decls;
-        }
+        return withSource(word, cachedDeclensions(word, getSourceDeclensionIndex(), srcDeclCache), includeSource);
     }
 
     /**
@@ -275,19 +724,92 @@ public class StatAlign<T extends NtoNTranslation> implements Aligner {
      *
      * @param word The word to compute declensions for.
      * @param includeSource If true include the input word in the result.
+     *
+     * @return An unmodifiable set of declensions.
      */
     public Set<String> targetDeclensions(String word, boolean includeSource) {
-        if (includeSource && tgtDeclCache.containsKey(word)) {
-            return tgtDeclCache.get(word);
-        } else {
-            Set<String> decls = declensions(word, getTargetWords().keySet(), includeSource);
-            if (includeSource) {
-                tgtDeclCache.put(word, decls);
+        return withSource(word, cachedDeclensions(word, getTargetDeclensionIndex(), tgtDeclCache), includeSource);
+    }
+
+    /**
+     * Adds translations to the model without computing it again. Word counts, posting lists, co-occurrences
+     * and declensions are updated incrementally, and only the cached declensions of words having new
+     * declensions are discarded.
+     *
+     * The translations are appended to a copy of the corpus this instance has been created with, which is
+     * hence left unchanged. Must not be called while alignments are computed.
+     *
+     * @param translations Translations to append to the corpus.
+     */
+    public synchronized void addTranslations(Collection<? extends T> translations) {
+        int from = getTokenizedCorpus().size();
+        int sourceWords = getSourceVocabulary().size();
+        int targetWords = getTargetVocabulary().size();
+
+        if (translations.isEmpty()) {
+            return;
+        }
+
+        if (!ownsCorpus) {
+            corpus = new ArrayList<T>(corpus);
+            ownsCorpus = true;
+        }
+        for (T tr : translations) {
+            corpus.add(tr);
+            getTokenizedCorpus().add(tr);
+        }
+
+        getPostingIndex().append(corpus, from);
+        if (cooccurrences != null) {
+            cooccurrences.append(from, getTokenizedCorpus().size());
+        }
+
+        getSourceDeclensionIndex().update();
+        getTargetDeclensionIndex().update();
+        invalidateDeclensions(srcDeclCache, getSourceVocabulary(), sourceWords);
+        invalidateDeclensions(tgtDeclCache, getTargetVocabulary(), targetWords);
+
+        sourceWordCount = (int) getSourceVocabulary().total();
+        targetWordCount = (int) getTargetVocabulary().total();
+    }
+
+    /**
+     * Removes the cached declensions of words which are related to words new to a vocabulary.
+     *
+     * @param cache Cache of declensions found in the vocabulary.
+     * @param vocabulary Vocabulary including the new words.
+     * @param from Id of the first new word.
+     */
+    protected void invalidateDeclensions(LruCache<String, Set<String>> cache, Vocabulary vocabulary, int from) {
+        Vocabulary added = new Vocabulary(vocabulary.size() - from);
+
+        for (int id = from; id < vocabulary.size(); ++id) {
+            added.add(vocabulary.word(id));
+        }
+
+        DeclensionIndex index = new DeclensionIndex(added, getWordParser());
+
+        for (String word : cache.keys()) {
+            if (!index.declensions(word).isEmpty()) {
+                cache.remove(word);
             }
-            return decls;
         }
     }
 
+    /**
+     * Looks up the declensions of a word in a cache which holds them regardless of includeSource.
+     */
+    protected Set<String> cachedDeclensions(String word, DeclensionIndex index, LruCache<String, Set<String>> cache) {
+        Set<String> decls = cache.get(word);
+
+        if (decls == null) {
+            decls = Collections.unmodifiableSet(index.declensions(word));
+            cache.put(word, decls);
+        }
+
+        return decls;
+    }
+
     /**
      * Computes the set of possible declensions for a given word from a specific corpus.
      *
@@ -308,13 +830,23 @@ public class StatAlign<T extends NtoNTranslation> implements Aligner {
             }
         }
 
-        if (!includeSource) {
+        return withSource(word, result, includeSource);
+    }
+
+    /**
+     * Adjusts a set of declensions of a word to include or exclude the word itself. The given set is not modified.
+     */
+    protected Set<String> withSource(String word, Set<String> declensions, boolean includeSource) {
+        if (!includeSource && declensions.contains(word)) {
+            Set<String> result = new HashSet<String>(declensions);
             result.remove(word);
-        } else if (result.isEmpty()) {
-            result.add(word);
+
+            return result;
+        } else if (includeSource && declensions.isEmpty()) {
+            return Collections.singleton(word);
         }
 
-        return result;
+        return declensions;
     }
 
     /**
@@ -331,10 +863,20 @@ public class StatAlign<T extends NtoNTranslation> implements Aligner {
     public Set<Relation> findRelatedWords(List<String> sources, List<String> targets, int n, double minResemblance) {
         Shingling src = new Shingling(n, mkString(sources, ""), getWordParser());
         Shingling tgt = new Shingling(n, mkString(targets, ""), getWordParser());
+
+        return findRelatedWords(src, tgt, minResemblance);
+    }
+
+    protected Set<Relation> findRelatedWords(Shingling src, Shingling tgt, double minResemblance) {
+        if (getCognateModel().isLsh()) {
+            return findRelatedWordsLsh(src, tgt, minResemblance);
+        }
+
         Set<Relation> results = new HashSet<Relation>();
+        List<Shingling.Shingles> targetShingles = tgt.getShingles();
 
         for (Shingling.Shingles ssh : src.getShingles()) {
-            for (Shingling.Shingles tsh : tgt.getShingles()) {
+            for (Shingling.Shingles tsh : targetShingles) {
                 if (ssh.resemblance(tsh) >= minResemblance) {
                     results.add(new Relation(ssh.getWord(), tsh.getWord()));
                 }
@@ -344,10 +886,77 @@ public class StatAlign<T extends NtoNTranslation> implements Aligner {
         return results;
     }
 
+    /**
+     * Finds related words comparing only those pairs of words whose MinHash signatures collide in at least
+     * one band (see CognateModel#setLsh) instead of all pairs. Every distinct word's signature is computed once,
+     * so the effort grows about linearly with the number of words. Related words are missed with a small
+     * probability depending on the number of bands and rows.
+     */
+    protected Set<Relation> findRelatedWordsLsh(Shingling src, Shingling tgt, double minResemblance) {
+        MinHash minHash = getCognateModel().getMinHash();
+        int bands = getCognateModel().getBands();
+        int rows = getCognateModel().getRows();
+        Map<Long, List<Shingling.Shingles>> buckets = new HashMap<Long, List<Shingling.Shingles>>();
+        Set<String> indexed = new HashSet<String>();
+        Set<Relation> results = new HashSet<Relation>();
+
+        for (Shingling.Shingles tsh : tgt.getShingles()) {
+            if (indexed.add(tsh.getWord())) {
+                int[] signature = minHash.signature(tsh.getKeys());
+
+                for (int band = 0; band < bands; ++band) {
+                    Long key = MinHash.band(signature, band, rows);
+                    List<Shingling.Shingles> bucket = buckets.get(key);
+
+                    if (bucket == null) {
+                        bucket = new ArrayList<Shingling.Shingles>(2);
+                        buckets.put(key, bucket);
+                    }
+                    bucket.add(tsh);
+                }
+            }
+        }
+
+        Set<String> searched = new HashSet<String>();
+
+        for (Shingling.Shingles ssh : src.getShingles()) {
+            if (searched.add(ssh.getWord())) {
+                int[] signature = minHash.signature(ssh.getKeys());
+                Set<String> compared = new HashSet<String>();
+
+                for (int band = 0; band < bands; ++band) {
+                    List<Shingling.Shingles> bucket = buckets.get(MinHash.band(signature, band, rows));
+
+                    for (int i = 0; bucket != null && i < bucket.size(); ++i) {
+                        Shingling.Shingles tsh = bucket.get(i);
+
+                        if (compared.add(tsh.getWord()) && ssh.resemblance(tsh) >= minResemblance) {
+                            results.add(new Relation(ssh.getWord(), tsh.getWord()));
+                        }
+                    }
+                }
+            }
+        }
+
+        return results;
+    }
+
     public Set<Relation> findRelatedWords(List<String> sources, List<String> targets) {
         return findRelatedWords(sources, targets, getCognateModel().getW(), getCognateModel().getResemblance());
     }
 
+    /**
+     * Finds related words of a tokenized translation using the default cognate model.
+     *
+     * @see #findRelatedWords(List, List, int, double)
+     */
+    protected Set<Relation> findRelatedWords(Tokens sources, Tokens targets) {
+        return findRelatedWords(
+                new Shingling(getCognateModel().getW(), sources.getWords(), getWordParser()),
+                new Shingling(getCognateModel().getW(), targets.getWords(), getWordParser()),
+                getCognateModel().getResemblance());
+    }
+
     /**
      * Prune the candidates of a list of PossibleTranslations instances so that for each word in the original
      * target sentence at most 1 candidate which is the most likely remains.
@@ -371,99 +980,86 @@ public class StatAlign<T extends NtoNTranslation> implements Aligner {
             }
         }
 
-        Set<String> words = new HashSet<String>();
+        Map<String, WordPruning> prunings = new HashMap<String, WordPruning>();
 
+        // group the candidates by word keeping the n highest probabilities of each,
+        // n being the number of occurrences of the word in the target sentence
         for (PossibleTranslations pt : pts) {
             for (Candidate candidate : pt.getCandidates()) {
-                // Now for every term we encounter delete all but the most likely one!
-                words.add(candidate.getWord());
+                WordPruning pruning = prunings.get(candidate.getWord());
+
+                if (pruning == null) {
+                    Integer wordCount = targetWordCounts.get(candidate.getWord());
+
+                    if (wordCount == null) {
+                        System.err.println("\n[warning] no word count for '" + candidate.getWord() + "'");
+                    }
+                    pruning = new WordPruning(wordCount != null ? wordCount : 0);
+                    prunings.put(candidate.getWord(), pruning);
+                }
+                pruning.add(candidate.getProbability());
             }
         }
 
-        for (String word : words) {
-            retainMostLikely(word, pts, targetWordCounts, false);
+        // now for every word delete all but the most likely candidates
+        for (PossibleTranslations pt : pts) {
+            Iterator<Candidate> cands = pt.getCandidates().iterator();
+            while (cands.hasNext()) {
+                Candidate cand = cands.next();
+
+                if (prunings.get(cand.getWord()).remove(cand.getProbability())) {
+                    cands.remove();
+                }
+            }
         }
 
         return pts;
     }
 
-    public List<PossibleTranslations> pruneMatches(
-            List<PossibleTranslations> matches, Map<String, Integer> targetWordCounts) {
-        return pruneMatches(matches, targetWordCounts, true);
-    }
-
     /**
-     * Given a list of PossibleTranslations instances remove all but the n most likely occurences of a given word
-     * where n is the number of occurences of said word in the original sentence.
-     *
-     * @param word The (target) word whose unlikely occurences are to be removed.
-     * @param pts The PossibleTranslations list to apply the pruning to.
-     * @param targetWordCounts A map holding for each source word the number of occurences in the original sentence.
-     * @param pure If true a new list with deep copies will be returned.
-     *             Otherwise the input instances will be changed in-place.
-     *
-     * @return List of PossibleTranslation instances where overall the word only the most likely candidates
-     *         are retained.
+     * Decides which candidates of a word to remove, retaining at most as many as the word occurs
+     * in the target sentence, the most likely first. Candidates less likely than the least likely
+     * retained probability are removed, and if that is NaN, all candidates that are not NaN are.
      */
-    protected List<PossibleTranslations> retainMostLikely(
-            String word,
-            List<PossibleTranslations> pts,
-            Map<String, Integer> targetWordCounts,
-            boolean pure) {
-
-        List<PossibleTranslations> result = pure ? new LinkedList<PossibleTranslations>() : pts;
-        PossibleTranslations maxPt = null;
-        double minProb = 0;
-        int maxCount = 0;
-        int wordCount = 0;
-        List<Double> probabilities = new LinkedList<Double>();
-
-        if (targetWordCounts.containsKey(word)) {
-            wordCount = targetWordCounts.get(word);
-        } else {
-            System.err.println("\n[warning] no word count for '" + word + "'");
+    private static class WordPruning {
+        private final int wordCount;
+        private final TopDoubles probabilities;
+        private int maxCount = 0;
+        private double minProb;
+        private boolean minNaN;
+        private boolean finished = false;
+
+        public WordPruning(int wordCount) {
+            this.wordCount = wordCount;
+            this.probabilities = new TopDoubles(wordCount);
         }
 
-        if (pure) {
-            for (PossibleTranslations pt : pts) {
-                result.add(pt.copy());
-            }
+        public void add(double probability) {
+            probabilities.add(probability);
         }
 
-        for (PossibleTranslations pt : result) {
-            for (Candidate candidate : pt.getCandidates()) {
-                if (candidate.getWord().equals(word)) {
-                    probabilities.add(candidate.getProbability());
-                }
+        /**
+         * Tells whether the next candidate of this word with the given probability is to be removed.
+         * Candidates have to be passed in the order of the alignment.
+         */
+        public boolean remove(double probability) {
+            if (!finished) {
+                minProb = probabilities.isEmpty() ? 1000 : probabilities.min();
+                minNaN = Double.isNaN(minProb);
+                finished = true;
             }
-        }
-
-        Collections.sort(probabilities); // sorted ascending
-        Collections.reverse(probabilities); // sort descending (highest probabilties first)
-        probabilities = take(wordCount, probabilities);
-        minProb = 1000;
-
-        if (probabilities.size() > 0) {
-            minProb = probabilities.get(probabilities.size() - 1);
-        }
 
-        boolean minNaN = Double.isNaN(minProb);
-
-        for (PossibleTranslations pt : pts) {
-            Iterator<Candidate> cands = pt.getCandidates().iterator();
-            while (cands.hasNext()) {
-                Candidate cand = cands.next();
-                if (cand.getWord().equals(word)) {
-                    if (cand.getProbability() < minProb || (minNaN && !Double.isNaN(cand.getProbability()))) {
-                        cands.remove();
-                    } else if (cand.getProbability() >= minProb && maxCount++ >= wordCount) {
-                        cands.remove();
-                    }
-                }
+            if (probability < minProb || (minNaN && !Double.isNaN(probability))) {
+                return true;
+            } else {
+                return probability >= minProb && maxCount++ >= wordCount;
             }
         }
+    }
 
-        return result;
+    public List<PossibleTranslations> pruneMatches(
+            List<PossibleTranslations> matches, Map<String, Integer> targetWordCounts) {
+        return pruneMatches(matches, targetWordCounts, true);
     }
 
     /**
@@ -477,38 +1073,51 @@ public class StatAlign<T extends NtoNTranslation> implements Aligner {
      * @return PossibleTranslations instances for each word in the source sentences in the order in which they occur.
      */
     public List<PossibleTranslations> possibleTranslations(
-            final List<String> sourceSentences, final List<String> targetSentences,
-            final int limit, final boolean reverse) {
+            List<String> sourceSentences, List<String> targetSentences, int limit, boolean reverse) {
+
+        return possibleTranslations(
+                tokenize(sourceSentences, !reverse), tokenize(targetSentences, reverse), limit, reverse);
+    }
+
+    /**
+     * For tokenized source sentences compute possible translations from tokenized target sentences for each word.
+     *
+     * @see #possibleTranslations(List, List, int, boolean)
+     */
+    protected List<PossibleTranslations> possibleTranslations(
+            Tokens sources, final Tokens targets, final int limit, final boolean reverse) {
 
         List<PossibleTranslations> translations = new LinkedList<PossibleTranslations>();
         List<Callable<PossibleTranslations>> tasks = new LinkedList<Callable<PossibleTranslations>>();
 
-        for (String source : sourceSentences) {
-            Matcher m = getWordParser().getWordPattern().matcher(source);
-
-            while (m.find()) {
-                final String word = m.group();
-                Callable<PossibleTranslations> task = new Callable<PossibleTranslations>() {
-                    public PossibleTranslations call() throws Exception {
-                        return possibleTranslations(word, targetSentences, limit, reverse);
-                    }
-                };
-                tasks.add(task);
+        if (batchAlignment.get() != null) {
+            // already running as part of a parallel batch alignment (see #associateAll),
+            // in which case the other threads are kept busy with other translations
+            for (int i = 0; i < sources.size(); ++i) {
+                translations.add(possibleTranslations(sources.word(i), targets, limit, reverse));
             }
+            return translations;
         }
 
-        int tries = 0;
-        while (tries++ < 3) {
-            try {
-                for (Future<PossibleTranslations> task : exec.invokeAll(tasks)) {
-                    translations.add(task.get());
+        for (int i = 0; i < sources.size(); ++i) {
+            final String word = sources.word(i);
+            Callable<PossibleTranslations> task = new Callable<PossibleTranslations>() {
+                public PossibleTranslations call() throws Exception {
+                    return possibleTranslations(word, targets, limit, reverse);
                 }
-                break;
-            } catch (InterruptedException e) {
-                System.out.println("[warning] interrupted: " + e.getMessage());
-            } catch (ExecutionException e) {
-                e.printStackTrace();
+            };
+            tasks.add(task);
+        }
+
+        try {
+            for (Future<PossibleTranslations> task : exec.invokeAll(tasks)) {
+                translations.add(task.get());
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while computing possible translations", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Could not compute possible translations", e.getCause());
         }
 
         return translations;
@@ -533,31 +1142,52 @@ public class StatAlign<T extends NtoNTranslation> implements Aligner {
      * @return A PossibleTranslations instance containing translation candidates for the source word in the target sentences.
      */
     public PossibleTranslations possibleTranslations(String sourceWord, List<String> targetSentences, int limit, boolean reverse) {
+        return possibleTranslations(sourceWord, tokenize(targetSentences, reverse), limit, reverse);
+    }
+
+    /**
+     * For a source word get possible translations among tokenized target sentences.
+     *
+     * @see #possibleTranslations(String, List, int, boolean)
+     */
+    protected PossibleTranslations possibleTranslations(String sourceWord, Tokens targets, int limit, boolean reverse) {
         List<Candidate> candidates = new LinkedList<Candidate>();
+        Set<String> declensions = reverse ? targetDeclensions(sourceWord, true) : sourceDeclensions(sourceWord, true);
+        Vocabulary vocabulary = reverse ? getTargetVocabulary() : getSourceVocabulary();
+        String[] declWords = declensions.toArray(new String[declensions.size()]);
+        int[] declIds = new int[declWords.length];
+        double[] scores = new double[targets.distinctSize()];
+        double[] probabilities = new double[targets.size()];
+
+        for (int d = 0; d < declWords.length; ++d) {
+            declIds[d] = vocabulary.id(declWords[d]);
+        }
+
+        // score every distinct word once and assign the scores to the positions afterwards
+        for (int i = 0; i < scores.length; ++i) {
+            int id = targets.distinctId(i);
 
-        for (String sentence : targetSentences) {
-            Matcher m = getWordParser().getWordPattern().matcher(sentence);
+            for (int d = 0; d < declIds.length; ++d) {
+                double p;
 
-            while (m.find()) {
-                String word = m.group();
-                Candidate candidate = new Candidate(word, 0);
-                for (String decl : (reverse ? targetDeclensions(sourceWord, true) : sourceDeclensions(sourceWord, true))) {
-                    double p = !reverse ? translationProbability(decl, word) : reverseTranslationProbability(decl, word);
+                if (declIds[d] != -1 && id != -1) {
+                    p = !reverse ? translationProbability(declIds[d], id) : reverseTranslationProbability(declIds[d], id);
+                } else { // words unknown to the model, e.g. of translations not part of the corpus
+                    String word = targets.distinctWord(i);
 
-                    candidate.boostProbability(p);
+                    p = !reverse ? translationProbability(declWords[d], word) :
+                            reverseTranslationProbability(declWords[d], word);
                 }
-                candidates.add(candidate);
+                scores[i] += p;
             }
         }
+        for (int i = 0; i < probabilities.length; ++i) {
+            probabilities[i] = scores[targets.distinct(i)];
+        }
 
-        Collections.sort(candidates, new Comparator<Candidate>() {
-            public int compare(Candidate c1, Candidate c2) {
-                return new Double(c2.getProbability()).compareTo(new Double(c1.getProbability()));
-            }
-        });
-
-        if (candidates.size() > limit && limit != -1) {
-            candidates = candidates.subList(0, limit);
+        // only the most likely candidates are created, in descending order of their probability
+        for (int i : TopK.select(probabilities, limit != -1 ? limit : probabilities.length)) {
+            candidates.add(new Candidate(targets.word(i), probabilities[i]));
         }
 
         return new PossibleTranslations(sourceWord, candidates);
@@ -583,24 +1213,51 @@ public class StatAlign<T extends NtoNTranslation> implements Aligner {
      * Source language model, i.e. the probability of a source word occuring.
      */
     public double sourceProbability(String word) {
-        return wordProbability(word, getSourceWords(), getSourceWordCount());
+        return wordProbability(word, getSourceVocabulary(), getSourceWordCount());
     }
 
     /**
      * Target language model, i.e. the probability of a target word occuring.
      */
     public double targetProbability(String word) {
-        return wordProbability(word, getTargetWords(), getTargetWordCount());
+        return wordProbability(word, getTargetVocabulary(), getTargetWordCount());
     }
 
-    public double wordProbability(String word, Map<String, Integer> dist, int distSize) {
-        int n = 0;
+    public double wordProbability(String word, Vocabulary vocabulary, int distSize) {
+        return vocabulary.frequency(word) / (double) distSize;
+    }
 
-        if (dist.containsKey(word)) {
-            n = dist.get(word);
-        }
+    /**
+     * Probability that a source word is translated by a target word, both given by their vocabulary ids.
+     * Yields the same as #translationProbability(String, String) without looking up any words by string.
+     */
+    public double translationProbability(int sourceWord, int targetWord) {
+        return (sourceProbability(sourceWord) * relationProbability(targetWord, sourceWord, true)) /
+                targetProbability(targetWord);
+    }
+
+    /**
+     * Probability that a target word is translated by a source word, both given by their vocabulary ids.
+     *
+     * @see #reverseTranslationProbability(String, String)
+     */
+    public double reverseTranslationProbability(int targetWord, int sourceWord) {
+        return (targetProbability(targetWord) * relationProbability(sourceWord, targetWord, false)) /
+                sourceProbability(sourceWord);
+    }
+
+    /**
+     * Probability of the source word with the given vocabulary id occuring.
+     */
+    public double sourceProbability(int word) {
+        return getSourceVocabulary().frequency(word) / (double) getSourceWordCount();
+    }
 
-        return n / (double) distSize;
+    /**
+     * Probability of the target word with the given vocabulary id occuring.
+     */
+    public double targetProbability(int word) {
+        return getTargetVocabulary().frequency(word) / (double) getTargetWordCount();
     }
 
     /**
@@ -620,74 +1277,157 @@ public class StatAlign<T extends NtoNTranslation> implements Aligner {
      *                          If false it is the other way around.
      */
     public double relationProbability(String word1, String word2, boolean targetGivenSource) {
-        int occurrences = 0;
+        CooccurrenceTable table = getCooccurrences();
+        int occurrences = -1;
 
-        Map<String, List<NtoNTranslation>> cache = targetGivenSource ?
-                targetGivenSourceCache : sourceGivenTargetCache;
-        List<NtoNTranslation> matches = cache.get(word2);
+        if (table != null) {
+            occurrences = targetGivenSource ? table.count(word2, word1) : table.count(word1, word2);
+        }
+        if (occurrences == -1) {
+            int[] matches = getPostingIndex().documents(word2, targetGivenSource);
+            int[] related = getPostingIndex().documents(word1, !targetGivenSource);
+            occurrences = getPostingIndex().intersectionCount(matches, related);
+        }
+
+        // counts are weighted by the multiplicities of deduplicated translations
+        return (occurrences / (double) getPostingIndex().documentCount(word2, targetGivenSource))
+                / getTokenizedCorpus().totalWeight();
+    }
 
-        if (matches == null) {
-            matches = new LinkedList<NtoNTranslation>();
-            for (NtoNTranslation tr : getCorpus()) {
-                if (getWordParser().findWord(word2, targetGivenSource ? tr.getSourceSentences() : tr.getTargetSentences()))
-                    matches.add(tr);
+    /**
+     * Translation model for words given by their vocabulary ids, using their terms' ids to look up
+     * posting lists and co-occurrences.
+     *
+     * @see #relationProbability(String, String, boolean)
+     */
+    public double relationProbability(int word1, int word2, boolean targetGivenSource) {
+        PostingIndex index = getPostingIndex();
+        CooccurrenceTable table = getCooccurrences();
+        int occurrences = -1;
+
+        if (table != null) {
+            int term1 = index.wordTerm(word1, !targetGivenSource);
+            int term2 = index.wordTerm(word2, targetGivenSource);
+
+            if (term1 != PostingIndex.NO_TERM && term2 != PostingIndex.NO_TERM) {
+                occurrences = targetGivenSource ? table.count(term2, term1) : table.count(term1, term2);
             }
-            cache.put(word2, matches);
         }
-
-        for (NtoNTranslation tr : matches) {
-            if (getWordParser().findWord(word1, targetGivenSource ? tr.getTargetSentences() : tr.getSourceSentences()))
-                ++occurrences;
+        if (occurrences == -1) {
+            occurrences = index.intersectionCount(index.documents(word2, targetGivenSource),
+                    index.documents(word1, !targetGivenSource));
         }
 
-        return (occurrences / (double) matches.size()) / getCorpus().size();
+        return (occurrences / (double) index.documentCount(word2, targetGivenSource))
+                / getTokenizedCorpus().totalWeight();
     }
 
-    protected void computeWordDistribution() {
-        sourceWords = new HashMap<String, Integer>();
-        targetWords = new HashMap<String, Integer>();
+    /**
+     * Counts the co-occurrences of all source and target terms of the corpus in advance, so that the translation
+     * model does not have to compute them for every probability. The corpus is counted in parallel partitions.
+     *
+     * @param minCount Only pairs co-occuring in at least this many translations are kept.
+     *                 The others are still computed on demand.
+     */
+    public void buildCooccurrences(int minCount) {
+        cooccurrences = new CooccurrenceTable(
+                getPostingIndex(), minCount, exec, Runtime.getRuntime().availableProcessors());
+    }
 
-        for (NtoNTranslation tr : getCorpus()) {
-            addToDistribution(tr.getSourceSentences(), getSourceWords());
-            addToDistribution(tr.getTargetSentences(), getTargetWords());
-        }
+    /**
+     * Tokenizes the corpus once, counting the words of both languages on the way.
+     * Partitions of the corpus are tokenized in parallel and merged afterwards.
+     */
+    protected void computeWordDistribution() {
+        tokenizedCorpus = TokenizedCorpus.tokenize(
+                getCorpus(), getWordParser(), exec, Runtime.getRuntime().availableProcessors());
+        sourceVocabulary = tokenizedCorpus.getSource().getVocabulary();
+        targetVocabulary = tokenizedCorpus.getTarget().getVocabulary();
     }
 
-    protected void addToDistribution(List<String> sentences, Map<String, Integer> dist) {
-        for (String sentence : sentences) {
-            Matcher m = getWordParser().getWordPattern().matcher(sentence);
+    /**
+     * Tokenizes sentences which are not necessarily part of the corpus.
+     *
+     * @param sentences Sentences to tokenize.
+     * @param source True if the sentences are in the source language.
+     */
+    protected Tokens tokenize(List<String> sentences, boolean source) {
+        return getTokenizedCorpus().tokenize(sentences, source);
+    }
 
-            while (m.find()) {
-                String word = m.group();
+    public List<T> getCorpus() {
+        return corpus;
+    }
 
-                if (dist.containsKey(word)) {
-                    dist.put(word, dist.get(word) + 1);
-                } else {
-                    dist.put(word, 1);
-                }
-            }
-        }
+    public ExecutorService getExecutor() {
+        return exec;
     }
 
-    protected int sumValues(Map<?, Integer> map) {
-        int sum = 0;
-        for (Integer i : map.values()) {
-            sum += i;
-        }
+    /**
+     * The corpus in the tokenized form all stages of the model work on.
+     */
+    public TokenizedCorpus getTokenizedCorpus() {
+        return tokenizedCorpus;
+    }
 
-        return sum;
+    /**
+     * Index of the translations containing a certain word used by the translation model.
+     */
+    public PostingIndex getPostingIndex() {
+        return postingIndex;
     }
 
-    public List<T> getCorpus() {
-        return corpus;
+    /**
+     * Precomputed co-occurrences used by the translation model.
+     *
+     * @return The table built by #buildCooccurrences or null if there is none.
+     */
+    public CooccurrenceTable getCooccurrences() {
+        return cooccurrences;
     }
 
+    /**
+     * Read-only view of the source language's word distribution.
+     */
     public Map<String, Integer> getSourceWords() {
-        return sourceWords;
+        return getSourceVocabulary().asMap();
     }
 
+    /**
+     * Read-only view of the target language's word distribution.
+     */
     public Map<String, Integer> getTargetWords() {
-        return targetWords;
+        return getTargetVocabulary().asMap();
+    }
+
+    /**
+     * Cache of source declensions, e.g. to inspect its hit rate.
+     */
+    public LruCache<String, Set<String>> getSourceDeclensionCache() {
+        return srcDeclCache;
+    }
+
+    /**
+     * Cache of target declensions, e.g. to inspect its hit rate.
+     */
+    public LruCache<String, Set<String>> getTargetDeclensionCache() {
+        return tgtDeclCache;
+    }
+
+    public DeclensionIndex getSourceDeclensionIndex() {
+        return sourceDeclensionIndex;
+    }
+
+    public DeclensionIndex getTargetDeclensionIndex() {
+        return targetDeclensionIndex;
+    }
+
+    public Vocabulary getSourceVocabulary() {
+        return sourceVocabulary;
+    }
+
+    public Vocabulary getTargetVocabulary() {
+        return targetVocabulary;
     }
 
     public List<String> getSourceBlacklist() {
@@ -737,15 +1477,55 @@ public class StatAlign<T extends NtoNTranslation> implements Aligner {
         return cognateModel;
     }
 
-    static class CognateModel {
+    public static class CognateModel {
         private int w;
         private double resemblance;
 
+        private int bands = 0;
+        private int rows = 1;
+        private MinHash minHash;
+
         public CognateModel(int w, double resemblance) {
             this.w = w;
             this.resemblance = resemblance;
         }
 
+        /**
+         * Enables locality-sensitive hashing, so that only words whose MinHash signatures collide in at least
+         * one band are compared. This trades recall for speed: a pair of words with a resemblance of J is
+         * missed with a probability of (1 - J^rows)^bands. The lower the required resemblance, the more bands
+         * of fewer rows are needed. For the default resemblance of 0.10, 32 bands of 1 row each miss about
+         * 3.4% of the pairs right at the threshold (0.9^32) and less than 0.1% of those with a resemblance
+         * of 0.20, while 64 bands bring the former down to about 0.1% at twice the hashing cost.
+         *
+         * @param bands Number of bands. 0 disables LSH, comparing all pairs of words again.
+         * @param rows Number of rows of every band.
+         */
+        public void setLsh(int bands, int rows) {
+            if (bands < 0 || rows < 1)
+                throw new IllegalArgumentException("Invalid number of bands (" + bands + ") or rows (" + rows + ")");
+
+            this.bands = bands;
+            this.rows = rows;
+            this.minHash = bands > 0 ? new MinHash(bands * rows, 0x4C5348L) : null;
+        }
+
+        public boolean isLsh() {
+            return bands > 0;
+        }
+
+        public int getBands() {
+            return bands;
+        }
+
+        public int getRows() {
+            return rows;
+        }
+
+        public MinHash getMinHash() {
+            return minHash;
+        }
+
         public int getW() {
             return w;
         }
@@ -0,0 +1,30 @@
+package lineup;
+
+import java.io.FileNotFoundException;
+import java.io.Reader;
+import java.util.Iterator;
+
+/**
+ * Reads a sentence-aligned corpus one translation at a time, so that corpora larger than the
+ * available memory can be processed while they are read.
+ */
+public interface StreamingCorpusReader extends CorpusReader {
+
+    /**
+     * Reads translations lazily. Reading stops at the end of the input or at the first error.
+     * The reader is left open, as it belongs to the caller.
+     *
+     * @param reader Reader to read the corpus from.
+     * @return Iterator parsing the next translation whenever it is needed.
+     */
+    Iterator<Translation> streamCorpus(Reader reader);
+
+    /**
+     * Reads the translations of a corpus file lazily. The file is closed at the end of the corpus
+     * or at the first error.
+     *
+     * @param file Path of the corpus file.
+     * @return Iterator parsing the next translation whenever it is needed.
+     */
+    Iterator<Translation> streamCorpus(String file) throws FileNotFoundException;
+}
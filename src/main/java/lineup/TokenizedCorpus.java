@@ -0,0 +1,545 @@
+package lineup;
+
+import lineup.util.IntList;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Matcher;
+
+/**
+ * A corpus tokenized once into a compact form shared by all stages of the statistical model.
+ *
+ * For the source and the target side of every translation it keeps the ids of the words (as matched by the
+ * WordParser's word pattern) and the distinct ids of its terms (see WordParser#getTerms) which the
+ * PostingIndex is built from. Both are stored in flat arrays indexed via per-translation offsets.
+ */
+public class TokenizedCorpus {
+
+    private WordParser wordParser;
+    private Side source = new Side();
+    private Side target = new Side();
+    private int size = 0;
+
+    /**
+     * Weight of every translation or null as long as all of them have a weight of 1.
+     */
+    private IntList weights;
+    private int totalWeight = 0;
+
+    /**
+     * Tokenizes a corpus. The translations of a DeduplicatedCorpus are weighted by their multiplicities.
+     *
+     * @param corpus Translations to tokenize. Their indices are the ids used within this TokenizedCorpus.
+     * @param wordParser WordParser to extract words and terms from sentences.
+     */
+    public TokenizedCorpus(Collection<? extends NtoNTranslation> corpus, WordParser wordParser) {
+        this.wordParser = wordParser;
+
+        int index = 0;
+        for (NtoNTranslation tr : corpus) {
+            add(tr, DeduplicatedCorpus.multiplicity(corpus, index++));
+        }
+    }
+
+    /**
+     * Restores a tokenized corpus, e.g. after reading it from a file.
+     *
+     * @param source Source sides of all translations.
+     * @param target Target sides of all translations.
+     * @param size Number of translations.
+     * @param weights Weight of every translation or null if all of them have a weight of 1.
+     * @param wordParser WordParser the corpus has been tokenized with.
+     */
+    public TokenizedCorpus(Side source, Side target, int size, int[] weights, WordParser wordParser) {
+        this.source = source;
+        this.target = target;
+        this.size = size;
+        this.wordParser = wordParser;
+
+        if (weights != null) {
+            this.weights = new IntList(weights);
+            for (int weight : weights) {
+                totalWeight += weight;
+            }
+        } else {
+            totalWeight = size;
+        }
+    }
+
+    public TokenizedCorpus(Side source, Side target, int size, WordParser wordParser) {
+        this(source, target, size, null, wordParser);
+    }
+
+    /**
+     * Tokenizes a corpus split into partitions in parallel and merges the partitions' results.
+     * The result is the same as that of tokenizing the corpus as a whole.
+     *
+     * @param corpus Translations to tokenize.
+     * @param wordParser WordParser to extract words and terms from sentences.
+     * @param exec ExecutorService to tokenize the partitions with.
+     * @param partitions Number of partitions to split the corpus into.
+     */
+    public static TokenizedCorpus tokenize(
+            Collection<? extends NtoNTranslation> corpus, final WordParser wordParser,
+            ExecutorService exec, int partitions) {
+
+        partitions = Math.max(1, Math.min(partitions, corpus.size() / 1000));
+        if (partitions == 1) {
+            return new TokenizedCorpus(corpus, wordParser);
+        }
+
+        final List<? extends NtoNTranslation> translations = corpus instanceof RandomAccess ?
+                (List<? extends NtoNTranslation>) corpus : new ArrayList<NtoNTranslation>(corpus);
+        final int[] multiplicities = new int[translations.size()];
+        List<Callable<TokenizedCorpus>> tasks = new LinkedList<Callable<TokenizedCorpus>>();
+        List<TokenizedCorpus> shards = new ArrayList<TokenizedCorpus>(partitions);
+
+        for (int i = 0; i < multiplicities.length; ++i) {
+            multiplicities[i] = DeduplicatedCorpus.multiplicity(corpus, i);
+        }
+        for (int i = 0; i < partitions; ++i) {
+            final int from = (int) ((long) translations.size() * i / partitions);
+            final int to = (int) ((long) translations.size() * (i + 1) / partitions);
+
+            tasks.add(new Callable<TokenizedCorpus>() {
+                public TokenizedCorpus call() throws Exception {
+                    TokenizedCorpus shard = new TokenizedCorpus(Collections.<NtoNTranslation>emptyList(), wordParser);
+
+                    for (int id = from; id < to; ++id) {
+                        shard.add(translations.get(id), multiplicities[id]);
+                    }
+                    return shard;
+                }
+            });
+        }
+
+        try {
+            for (Future<TokenizedCorpus> shard : exec.invokeAll(tasks)) {
+                shards.add(shard.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while tokenizing corpus", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Could not tokenize corpus", e.getCause());
+        }
+
+        return merge(shards, wordParser);
+    }
+
+    /**
+     * Merges tokenized parts of a corpus in the given order. Words and terms get the ids they would have
+     * got if the parts had been tokenized as one corpus, and their counts are summed up.
+     *
+     * @param shards Consecutive parts of a corpus.
+     * @param wordParser WordParser the parts have been tokenized with.
+     */
+    public static TokenizedCorpus merge(List<TokenizedCorpus> shards, WordParser wordParser) {
+        TokenizedCorpus result = new TokenizedCorpus(Collections.<NtoNTranslation>emptyList(), wordParser);
+
+        for (TokenizedCorpus shard : shards) {
+            result.getSource().append(shard.getSource(), shard.size());
+            result.getTarget().append(shard.getTarget(), shard.size());
+            for (int id = 0; id < shard.size(); ++id) {
+                result.addWeight(shard.weight(id));
+            }
+            result.size += shard.size();
+        }
+
+        return result;
+    }
+
+    /**
+     * Appends a translation, counting its words.
+     *
+     * @return The id of the added translation.
+     */
+    public int add(NtoNTranslation translation) {
+        return add(translation, 1);
+    }
+
+    /**
+     * Appends a translation standing for several equal ones, e.g. of a DeduplicatedCorpus.
+     * Its words are counted that many times.
+     *
+     * @param translation Translation to add.
+     * @param weight Number of times the translation occurs.
+     *
+     * @return The id of the added translation.
+     */
+    public int add(NtoNTranslation translation, int weight) {
+        source.add(translation.getSourceSentences(), getWordParser(), weight);
+        target.add(translation.getTargetSentences(), getWordParser(), weight);
+        addWeight(weight);
+
+        return size++;
+    }
+
+    private void addWeight(int weight) {
+        if (weights == null && weight != 1) {
+            weights = new IntList(size + 1);
+            for (int id = 0; id < size; ++id) {
+                weights.add(1);
+            }
+        }
+        if (weights != null) {
+            weights.add(weight);
+        }
+        totalWeight += weight;
+    }
+
+    /**
+     * Tokenizes sentences which are not part of this corpus. Their words are not counted.
+     *
+     * @param sentences Sentences to tokenize.
+     * @param source If true look up words in the source vocabulary, otherwise in the target vocabulary.
+     */
+    public Tokens tokenize(List<String> sentences, boolean source) {
+        Vocabulary vocabulary = side(source).getVocabulary();
+        List<String> words = new ArrayList<String>();
+
+        for (String sentence : sentences) {
+            Matcher m = getWordParser().getWordPattern().matcher(sentence);
+
+            while (m.find()) {
+                words.add(m.group());
+            }
+        }
+
+        String[] tokens = words.toArray(new String[words.size()]);
+        int[] ids = new int[tokens.length];
+
+        for (int i = 0; i < tokens.length; ++i) {
+            ids[i] = vocabulary.id(tokens[i]);
+        }
+
+        return new Tokens(tokens, ids);
+    }
+
+    /**
+     * The tokens of one side of a translation of this corpus.
+     *
+     * @param translation Id of the translation.
+     * @param source If true return the source tokens, otherwise the target tokens.
+     */
+    public Tokens tokens(int translation, boolean source) {
+        Side side = side(source);
+        int from = side.tokenStart(translation);
+        int to = side.tokenEnd(translation);
+        String[] words = new String[to - from];
+        int[] ids = new int[to - from];
+
+        for (int i = from; i < to; ++i) {
+            ids[i - from] = side.wordId(i);
+            words[i - from] = side.getVocabulary().word(ids[i - from]);
+        }
+
+        return new Tokens(words, ids);
+    }
+
+    /**
+     * Number of translations.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Number of times a translation occurs in the original corpus, which is 1 unless it has been deduplicated.
+     */
+    public int weight(int translation) {
+        return weights != null ? weights.get(translation) : 1;
+    }
+
+    /**
+     * Sum of the weights of the given translations.
+     *
+     * @param translations Ids of translations, e.g. a posting list.
+     */
+    public int weight(int[] translations) {
+        if (weights == null) {
+            return translations.length;
+        }
+
+        int sum = 0;
+        for (int id : translations) {
+            sum += weights.get(id);
+        }
+
+        return sum;
+    }
+
+    /**
+     * Sum of the weights of all translations, i.e. the size of the original corpus.
+     */
+    public int totalWeight() {
+        return totalWeight;
+    }
+
+    /**
+     * States whether any translation has a weight other than 1.
+     */
+    public boolean isWeighted() {
+        return weights != null;
+    }
+
+    /**
+     * Weight of every translation or null if all of them have a weight of 1.
+     */
+    public int[] getWeights() {
+        return weights != null ? weights.toArray() : null;
+    }
+
+    public Side getSource() {
+        return source;
+    }
+
+    public Side getTarget() {
+        return target;
+    }
+
+    public Side side(boolean source) {
+        return source ? getSource() : getTarget();
+    }
+
+    public WordParser getWordParser() {
+        return wordParser;
+    }
+
+    /**
+     * The source or target side of all translations of a TokenizedCorpus.
+     */
+    public static class Side {
+        private Vocabulary vocabulary = new Vocabulary();
+        private Vocabulary terms = new Vocabulary();
+
+        private IntList tokenStarts = new IntList();
+        private IntList wordIds = new IntList();
+
+        private IntList termStarts = new IntList();
+        private IntList termIds = new IntList();
+
+        protected Side() {
+            tokenStarts.add(0);
+            termStarts.add(0);
+        }
+
+        /**
+         * Restores the side of a tokenized corpus from its arrays.
+         *
+         * @see #tokenStart
+         * @see #wordId
+         * @see #termStart
+         * @see #termId
+         */
+        public Side(Vocabulary vocabulary, Vocabulary terms,
+                    int[] tokenStarts, int[] wordIds, int[] termStarts, int[] termIds) {
+            this.vocabulary = vocabulary;
+            this.terms = terms;
+            this.tokenStarts = new IntList(tokenStarts);
+            this.wordIds = new IntList(wordIds);
+            this.termStarts = new IntList(termStarts);
+            this.termIds = new IntList(termIds);
+        }
+
+        protected void add(List<String> sentences, WordParser wordParser, int weight) {
+            IntList translationTerms = new IntList();
+
+            for (String sentence : sentences) {
+                Matcher m = wordParser.getWordPattern().matcher(sentence);
+
+                while (m.find()) {
+                    wordIds.add(vocabulary.add(m.group(), weight));
+                }
+                for (String term : wordParser.getTerms(sentence)) {
+                    translationTerms.add(terms.add(term));
+                }
+            }
+
+            int[] distinct = translationTerms.toArray();
+            int previous = -1;
+
+            Arrays.sort(distinct);
+            for (int id : distinct) {
+                if (id != previous) {
+                    termIds.add(id);
+                    previous = id;
+                }
+            }
+
+            tokenStarts.add(wordIds.size());
+            termStarts.add(termIds.size());
+        }
+
+        /**
+         * Appends all translations of another side mapping its word and term ids to the ones of this side.
+         *
+         * @param side Side to append.
+         * @param translations Number of the other side's translations.
+         */
+        protected void append(Side side, int translations) {
+            int[] words = new int[side.getVocabulary().size()];
+            int[] termMap = new int[side.getTerms().size()];
+
+            for (int id = 0; id < words.length; ++id) {
+                words[id] = vocabulary.add(side.getVocabulary().word(id), side.getVocabulary().frequency(id));
+            }
+            for (int id = 0; id < termMap.length; ++id) {
+                termMap[id] = terms.add(side.getTerms().word(id));
+            }
+
+            for (int tr = 0; tr < translations; ++tr) {
+                for (int i = side.tokenStart(tr); i < side.tokenEnd(tr); ++i) {
+                    wordIds.add(words[side.wordId(i)]);
+                }
+
+                int[] ids = new int[side.termEnd(tr) - side.termStart(tr)];
+
+                for (int i = 0; i < ids.length; ++i) {
+                    ids[i] = termMap[side.termId(side.termStart(tr) + i)];
+                }
+                Arrays.sort(ids);
+                for (int id : ids) {
+                    termIds.add(id);
+                }
+
+                tokenStarts.add(wordIds.size());
+                termStarts.add(termIds.size());
+            }
+        }
+
+        /**
+         * Index of the first token of a translation.
+         */
+        public int tokenStart(int translation) {
+            return tokenStarts.get(translation);
+        }
+
+        /**
+         * Index after the last token of a translation.
+         */
+        public int tokenEnd(int translation) {
+            return tokenStarts.get(translation + 1);
+        }
+
+        /**
+         * Vocabulary id of a token's word.
+         */
+        public int wordId(int token) {
+            return wordIds.get(token);
+        }
+
+        /**
+         * Index of the first term of a translation.
+         */
+        public int termStart(int translation) {
+            return termStarts.get(translation);
+        }
+
+        /**
+         * Index after the last term of a translation.
+         */
+        public int termEnd(int translation) {
+            return termStarts.get(translation + 1);
+        }
+
+        /**
+         * Id of a term. The term ids of a translation are distinct and sorted.
+         */
+        public int termId(int index) {
+            return termIds.get(index);
+        }
+
+        /**
+         * Words and their counts.
+         */
+        public Vocabulary getVocabulary() {
+            return vocabulary;
+        }
+
+        /**
+         * Distinct terms.
+         */
+        public Vocabulary getTerms() {
+            return terms;
+        }
+    }
+
+    /**
+     * Words of one side of a translation in the order of their occurrence.
+     * Every word is also numbered among the distinct words, so that per-word computations need only be
+     * done once for repeated words.
+     */
+    public static class Tokens {
+        private String[] words;
+        private int[] distinct;
+        private String[] distinctWords;
+        private int[] distinctIds;
+
+        /**
+         * @param words Words in the order of their occurrence.
+         * @param ids Vocabulary id of every word or -1 for words the corpus does not contain.
+         */
+        public Tokens(String[] words, int[] ids) {
+            this.words = words;
+            this.distinct = new int[words.length];
+
+            Map<String, Integer> numbers = new HashMap<String, Integer>();
+            List<String> distinctWords = new ArrayList<String>();
+
+            for (int i = 0; i < words.length; ++i) {
+                Integer number = numbers.get(words[i]);
+
+                if (number == null) {
+                    number = distinctWords.size();
+                    numbers.put(words[i], number);
+                    distinctWords.add(words[i]);
+                }
+                distinct[i] = number;
+            }
+            this.distinctWords = distinctWords.toArray(new String[distinctWords.size()]);
+            this.distinctIds = new int[this.distinctWords.length];
+
+            for (int i = 0; i < words.length; ++i) {
+                distinctIds[distinct[i]] = ids[i];
+            }
+        }
+
+        public int size() {
+            return words.length;
+        }
+
+        public String word(int index) {
+            return words[index];
+        }
+
+        /**
+         * Number of the word at the given index among the distinct words in the order of their first occurrence.
+         */
+        public int distinct(int index) {
+            return distinct[index];
+        }
+
+        public String distinctWord(int number) {
+            return distinctWords[number];
+        }
+
+        /**
+         * Vocabulary id of a distinct word or -1 if the corpus does not contain it.
+         */
+        public int distinctId(int number) {
+            return distinctIds[number];
+        }
+
+        /**
+         * Number of distinct words.
+         */
+        public int distinctSize() {
+            return distinctWords.length;
+        }
+
+        public List<String> getWords() {
+            return Arrays.asList(words);
+        }
+    }
+}
@@ -1,6 +1,6 @@
 package lineup;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -14,12 +14,22 @@ public class Translation implements NtoNTranslation {
     private String sourceLanguage;
     private String targetLanguage;
 
-    private List<String> sourceSentences = new LinkedList<String>();
-    private List<String> targetSentences = new LinkedList<String>();
+    private List<String> sourceSentences;
+    private List<String> targetSentences;
 
     public Translation(String sourceLanguage, String targetLanguage) {
+        this(sourceLanguage, targetLanguage, new ArrayList<String>(1), new ArrayList<String>(1));
+    }
+
+    /**
+     * Creates a translation using the given lists as its sentences, e.g. views of a TranslationStore.
+     */
+    protected Translation(String sourceLanguage, String targetLanguage,
+                          List<String> sourceSentences, List<String> targetSentences) {
         this.sourceLanguage = sourceLanguage;
         this.targetLanguage = targetLanguage;
+        this.sourceSentences = sourceSentences;
+        this.targetSentences = targetSentences;
     }
 
     public Translation(String sourceLanguage, String targetLanguage, String sourceSentence, String targetSentence) {
@@ -0,0 +1,188 @@
+package lineup;
+
+import lineup.util.IntList;
+
+import java.nio.charset.Charset;
+import java.util.*;
+
+/**
+ * Compact random access list of translations. The text of all sentences is kept in one UTF-8 encoded
+ * byte array with a table of offsets at which each sentence starts, so that a translation costs a few ints
+ * in addition to its text instead of several objects per sentence.
+ *
+ * Translations are created on access and their sentences are decoded from the bytes whenever they are read.
+ * They cannot be modified. Translations can only be appended to the store.
+ */
+public class TranslationStore extends AbstractList<Translation> implements RandomAccess {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private byte[] text = new byte[1024];
+    private int length;
+
+    /**
+     * Start of every sentence in the text followed by the end of the last one.
+     */
+    private IntList sentenceStarts = new IntList();
+
+    /**
+     * Index of every translation's first source and first target sentence followed by the number of
+     * sentences. The target sentences of translation i end where the source sentences of i + 1 begin.
+     */
+    private IntList firstSentences = new IntList();
+
+    private List<String> sourceLanguages = new ArrayList<String>(1);
+    private List<String> targetLanguages = new ArrayList<String>(1);
+
+    /**
+     * Index of every translation's languages or null as long as all translations have the same ones.
+     */
+    private IntList languages;
+
+    private int size;
+
+    public TranslationStore() {
+        sentenceStarts.add(0);
+        firstSentences.add(0);
+    }
+
+    public TranslationStore(Collection<? extends NtoNTranslation> translations) {
+        this();
+
+        for (NtoNTranslation tr : translations) {
+            append(tr);
+        }
+    }
+
+    /**
+     * Appends a translation to this store. Changes made to it afterwards are not reflected by the store.
+     */
+    public void append(NtoNTranslation tr) {
+        int language = language(tr.getSourceLanguage(), tr.getTargetLanguage());
+
+        for (String sentence : tr.getSourceSentences()) {
+            appendSentence(sentence);
+        }
+        firstSentences.add(sentenceStarts.size() - 1);
+
+        for (String sentence : tr.getTargetSentences()) {
+            appendSentence(sentence);
+        }
+        firstSentences.add(sentenceStarts.size() - 1);
+
+        if (languages != null) {
+            languages.add(language);
+        }
+        ++size;
+        ++modCount;
+    }
+
+    private void appendSentence(String sentence) {
+        byte[] bytes = sentence.getBytes(UTF8);
+
+        if (length + bytes.length > text.length) {
+            text = Arrays.copyOf(text, Math.max(text.length * 2, length + bytes.length));
+        }
+        System.arraycopy(bytes, 0, text, length, bytes.length);
+        length += bytes.length;
+        sentenceStarts.add(length);
+    }
+
+    private int language(String sourceLanguage, String targetLanguage) {
+        for (int i = 0; i < sourceLanguages.size(); ++i) {
+            if (equal(sourceLanguages.get(i), sourceLanguage) && equal(targetLanguages.get(i), targetLanguage)) {
+                return i;
+            }
+        }
+
+        if (!sourceLanguages.isEmpty() && languages == null) {
+            languages = new IntList(size + 1);
+
+            for (int i = 0; i < size; ++i) {
+                languages.add(0);
+            }
+        }
+        sourceLanguages.add(sourceLanguage);
+        targetLanguages.add(targetLanguage);
+
+        return sourceLanguages.size() - 1;
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    @Override
+    public boolean add(Translation tr) {
+        append(tr);
+
+        return true;
+    }
+
+    @Override
+    public Translation get(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+
+        int language = languages != null ? languages.get(index) : 0;
+        int sources = firstSentences.get(index * 2);
+        int targets = firstSentences.get(index * 2 + 1);
+        int end = firstSentences.get(index * 2 + 2);
+
+        return new Translation(sourceLanguages.get(language), targetLanguages.get(language),
+                new Sentences(sources, targets), new Sentences(targets, end));
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Shrinks the text buffer to the size of the text, e.g. once all translations have been appended.
+     */
+    public void trimToSize() {
+        if (text.length > length) {
+            text = Arrays.copyOf(text, length);
+        }
+    }
+
+    /**
+     * Number of bytes taken by the encoded sentences.
+     */
+    public int textSize() {
+        return length;
+    }
+
+    protected String sentence(int index) {
+        int start = sentenceStarts.get(index);
+
+        return new String(text, start, sentenceStarts.get(index + 1) - start, UTF8);
+    }
+
+    /**
+     * Read-only view of consecutive sentences.
+     */
+    private class Sentences extends AbstractList<String> implements RandomAccess {
+        private int from;
+        private int to;
+
+        public Sentences(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public String get(int index) {
+            if (index < 0 || index >= size())
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+
+            return sentence(from + index);
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package lineup;
+
+import java.util.*;
+
+/**
+ * Assigns dense int ids to words in the order they are added and counts their occurrences.
+ * Counts are kept in primitive arrays indexed by id, so that the model can refer to words by their ids
+ * instead of hashing strings over and over again.
+ */
+public class Vocabulary {
+
+    private String[] words;
+    private int[] counts;
+    private long total;
+    private int size;
+
+    /**
+     * Open addressing table of ids + 1 where 0 marks a free slot.
+     */
+    private int[] table;
+    private int mask;
+
+    public Vocabulary(int expectedSize) {
+        int capacity = 16;
+        while (capacity / 2 < expectedSize) {
+            capacity *= 2;
+        }
+
+        words = new String[Math.max(expectedSize, 16)];
+        counts = new int[words.length];
+        table = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    public Vocabulary() {
+        this(16);
+    }
+
+    /**
+     * Restores a vocabulary, e.g. after reading it from a file.
+     *
+     * @param words Distinct words, each word's index being its id.
+     * @param counts Count of every word.
+     */
+    public Vocabulary(String[] words, int[] counts) {
+        this(words.length);
+
+        if (words.length != counts.length)
+            throw new IllegalArgumentException("Expected " + words.length + " counts but got " + counts.length);
+
+        for (int id = 0; id < words.length; ++id) {
+            if (add(words[id], counts[id]) != id)
+                throw new IllegalArgumentException("Duplicate word: " + words[id]);
+        }
+    }
+
+    /**
+     * Adds a word to this vocabulary unless it is contained already.
+     *
+     * @return The word's id.
+     */
+    public int add(String word) {
+        int slot = slot(word);
+
+        if (table[slot] != 0) {
+            return table[slot] - 1;
+        }
+
+        if (size == words.length) {
+            words = Arrays.copyOf(words, size * 2);
+            counts = Arrays.copyOf(counts, size * 2);
+        }
+
+        int id = size++;
+        words[id] = word;
+        table[slot] = id + 1;
+
+        if (size > table.length / 2) {
+            rehash(table.length * 2);
+        }
+
+        return id;
+    }
+
+    /**
+     * Adds a word to this vocabulary and counts its occurrences.
+     *
+     * @return The word's id.
+     */
+    public int add(String word, int occurrences) {
+        int id = add(word);
+        increment(id, occurrences);
+
+        return id;
+    }
+
+    public void increment(int id, int occurrences) {
+        counts[id] += occurrences;
+        total += occurrences;
+    }
+
+    /**
+     * Looks up the id of a word.
+     *
+     * @return The word's id or -1 if it is not contained in this vocabulary.
+     */
+    public int id(String word) {
+        return table[slot(word)] - 1;
+    }
+
+    public boolean contains(String word) {
+        return id(word) != -1;
+    }
+
+    public String word(int id) {
+        return words[id];
+    }
+
+    /**
+     * The number of occurrences of the word with the given id.
+     */
+    public int frequency(int id) {
+        return counts[id];
+    }
+
+    /**
+     * The number of occurrences of a word.
+     *
+     * @return The word's count or 0 if it is not contained in this vocabulary.
+     */
+    public int frequency(String word) {
+        int id = id(word);
+
+        return id != -1 ? counts[id] : 0;
+    }
+
+    /**
+     * Number of distinct words.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Sum of all words' counts.
+     */
+    public long total() {
+        return total;
+    }
+
+    /**
+     * Read-only view of this vocabulary mapping each word to its count.
+     */
+    public Map<String, Integer> asMap() {
+        return new AbstractMap<String, Integer>() {
+            @Override
+            public Integer get(Object key) {
+                int id = key instanceof String ? id((String) key) : -1;
+
+                return id != -1 ? counts[id] : null;
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return key instanceof String && contains((String) key);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public Set<Entry<String, Integer>> entrySet() {
+                return new AbstractSet<Entry<String, Integer>>() {
+                    @Override
+                    public Iterator<Entry<String, Integer>> iterator() {
+                        return new Iterator<Entry<String, Integer>>() {
+                            private int id = 0;
+
+                            public boolean hasNext() {
+                                return id < size;
+                            }
+
+                            public Entry<String, Integer> next() {
+                                if (!hasNext())
+                                    throw new NoSuchElementException();
+
+                                Entry<String, Integer> entry =
+                                        new SimpleImmutableEntry<String, Integer>(words[id], counts[id]);
+                                ++id;
+
+                                return entry;
+                            }
+
+                            public void remove() {
+                                throw new UnsupportedOperationException("Vocabulary views are read-only");
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size() {
+                        return size;
+                    }
+                };
+            }
+        };
+    }
+
+    private int slot(String word) {
+        int slot = hash(word) & mask;
+
+        while (table[slot] != 0 && !words[table[slot] - 1].equals(word)) {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    private void rehash(int capacity) {
+        table = new int[capacity];
+        mask = capacity - 1;
+
+        for (int id = 0; id < size; ++id) {
+            int slot = hash(words[id]) & mask;
+
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = id + 1;
+        }
+    }
+
+    private static int hash(String word) {
+        int h = word.hashCode() * 0x9E3779B9;
+
+        return h ^ (h >>> 16);
+    }
+}
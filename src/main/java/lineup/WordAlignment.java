@@ -0,0 +1,180 @@
+package lineup;
+
+import java.util.*;
+
+/**
+ * Compact word alignment of a whole translation holding the same information as a list of
+ * PossibleTranslations in a few primitive arrays.
+ *
+ * Row i describes the possible translations of the source word at position i. Its candidates are stored
+ * in the entries from offsets[i] to offsets[i + 1] of the arrays of target word ids and scores (compressed
+ * sparse rows). Words are referred to by their ids in the source or target Vocabulary. Words not contained
+ * in the vocabulary get negative ids pointing into a small table of unknown words of this alignment.
+ */
+public class WordAlignment {
+
+    private Vocabulary sourceVocabulary;
+    private Vocabulary targetVocabulary;
+
+    private int[] sourceIds;
+    private int[] offsets;
+    private int[] targetIds;
+    private double[] scores;
+    private String[] unknownWords;
+
+    /**
+     * Converts a word alignment.
+     *
+     * @param alignment Possible translations for every source word in the order of the words' occurrence.
+     * @param sourceVocabulary Vocabulary to look up the ids of source words in.
+     * @param targetVocabulary Vocabulary to look up the ids of target words (candidates) in.
+     */
+    public WordAlignment(List<PossibleTranslations> alignment, Vocabulary sourceVocabulary, Vocabulary targetVocabulary) {
+        this.sourceVocabulary = sourceVocabulary;
+        this.targetVocabulary = targetVocabulary;
+
+        int rows = alignment.size();
+        int entries = 0;
+
+        for (PossibleTranslations pt : alignment) {
+            entries += pt.getCandidates().size();
+        }
+
+        sourceIds = new int[rows];
+        offsets = new int[rows + 1];
+        targetIds = new int[entries];
+        scores = new double[entries];
+
+        List<String> unknown = new ArrayList<String>(0);
+        int row = 0;
+        int entry = 0;
+
+        for (PossibleTranslations pt : alignment) {
+            sourceIds[row] = id(pt.getSourceWord(), sourceVocabulary, unknown);
+
+            for (Candidate cand : pt.getCandidates()) {
+                targetIds[entry] = id(cand.getWord(), targetVocabulary, unknown);
+                scores[entry] = cand.getProbability();
+                ++entry;
+            }
+            offsets[++row] = entry;
+        }
+
+        unknownWords = unknown.toArray(new String[unknown.size()]);
+    }
+
+    private static int id(String word, Vocabulary vocabulary, List<String> unknown) {
+        int id = vocabulary.id(word);
+
+        if (id == -1) {
+            int index = unknown.indexOf(word);
+
+            if (index == -1) {
+                index = unknown.size();
+                unknown.add(word);
+            }
+            id = -(index + 1);
+        }
+
+        return id;
+    }
+
+    /**
+     * Number of source words.
+     */
+    public int size() {
+        return sourceIds.length;
+    }
+
+    /**
+     * Vocabulary id of a row's source word, negative if it is unknown.
+     */
+    public int sourceId(int row) {
+        return sourceIds[row];
+    }
+
+    public String sourceWord(int row) {
+        return word(sourceIds[row], sourceVocabulary);
+    }
+
+    /**
+     * Index of the first candidate of a row.
+     */
+    public int candidatesStart(int row) {
+        return offsets[row];
+    }
+
+    /**
+     * Index after the last candidate of a row.
+     */
+    public int candidatesEnd(int row) {
+        return offsets[row + 1];
+    }
+
+    /**
+     * Total number of candidates of all rows.
+     */
+    public int candidates() {
+        return targetIds.length;
+    }
+
+    /**
+     * Vocabulary id of a candidate's target word, negative if it is unknown.
+     */
+    public int targetId(int candidate) {
+        return targetIds[candidate];
+    }
+
+    public String targetWord(int candidate) {
+        return word(targetIds[candidate], targetVocabulary);
+    }
+
+    public double score(int candidate) {
+        return scores[candidate];
+    }
+
+    private String word(int id, Vocabulary vocabulary) {
+        return id >= 0 ? vocabulary.word(id) : unknownWords[-id - 1];
+    }
+
+    /**
+     * The possible translations of a row's source word. Every call creates a new instance.
+     */
+    public PossibleTranslations possibleTranslations(int row) {
+        List<Candidate> candidates = new LinkedList<Candidate>();
+
+        for (int i = candidatesStart(row); i < candidatesEnd(row); ++i) {
+            candidates.add(new Candidate(targetWord(i), score(i)));
+        }
+
+        return new PossibleTranslations(sourceWord(row), candidates);
+    }
+
+    /**
+     * Read-only list view of this alignment creating PossibleTranslations instances on access.
+     * Changes to the returned instances are not written back.
+     */
+    public List<PossibleTranslations> asList() {
+        return new View();
+    }
+
+    @Override
+    public String toString() {
+        return asList().toString();
+    }
+
+    private class View extends AbstractList<PossibleTranslations> implements RandomAccess {
+        @Override
+        public PossibleTranslations get(int index) {
+            if (index < 0 || index >= size())
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+
+            return possibleTranslations(index);
+        }
+
+        @Override
+        public int size() {
+            return WordAlignment.this.size();
+        }
+    }
+}
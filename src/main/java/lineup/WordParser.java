@@ -1,10 +1,18 @@
 package lineup;
 
+import lineup.util.LruCache;
+
 import java.util.*;
 import java.util.regex.*;
 
 public class WordParser {
 	private Pattern wordPattern = Pattern.compile("(\\p{L}[\\p{L}_\\-0-9]*)|(\\d+(-\\d+)?)");
+	private LruCache<String, Pattern> containsWordPatterns = new LruCache<String, Pattern>(4096);
+	private final boolean literalWordMatching = !overrides("containsWordPattern", String.class);
+
+	private static final int WORD_TYPES = (1 << Character.NON_SPACING_MARK) | (1 << Character.ENCLOSING_MARK) |
+	        (1 << Character.COMBINING_SPACING_MARK) | (1 << Character.DECIMAL_DIGIT_NUMBER) |
+	        (1 << Character.CONNECTOR_PUNCTUATION);
 
 	public static final WordParser instance = new WordParser();
 
@@ -22,15 +30,72 @@ public class WordParser {
 
     public boolean findWord(String word, List<String> sentences) {
         for (String sentence : sentences) {
-            Matcher m = containsWordPattern(word).matcher(sentence);
+            if (containsWord(word, sentence)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether a sentence contains a word as matched by #containsWordPattern, i.e. case-insensitively
+     * and delimited by word boundaries.
+     *
+     * Words which can be used literally within a regular expression are searched for without one.
+     */
+    public boolean containsWord(String word, String sentence) {
+        if (!literalWordMatching() || !isLiteral(word) || word.isEmpty()) {
+            return containsWordPattern(word).matcher(sentence).find();
+        }
 
-            if (m.find()) {
+        int length = word.length();
+        char first = lowerCase(word.charAt(0));
+
+        for (int i = 0; i + length <= sentence.length(); ++i) {
+            if (lowerCase(sentence.charAt(i)) == first && regionMatches(word, sentence, i) &&
+                    isWordBoundary(sentence, i) && isWordBoundary(sentence, i + length)) {
                 return true;
             }
         }
+
         return false;
     }
 
+    /**
+     * States whether words are matched as defined by the default #containsWordPattern, which is true unless a
+     * subclass overrides it. Only then words can be found without regular expressions (see #containsWord)
+     * or looked up by their terms (see PostingIndex).
+     */
+    public boolean literalWordMatching() {
+        return literalWordMatching;
+    }
+
+    /**
+     * Compares a word with a region of a sentence ignoring the case of US-ASCII characters only.
+     */
+    protected boolean regionMatches(String word, String sentence, int offset) {
+        for (int i = 0; i < word.length(); ++i) {
+            if (lowerCase(word.charAt(i)) != lowerCase(sentence.charAt(offset + i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether there is a word boundary (\b) at the given index of a sentence.
+     */
+    protected boolean isWordBoundary(String sentence, int index) {
+        boolean left = index > 0 && isWordChar(Character.codePointBefore(sentence, index));
+        boolean right = index < sentence.length() && isWordChar(sentence.codePointAt(index));
+
+        return left ^ right;
+    }
+
+    private static char lowerCase(char ch) {
+        return ch >= 'A' && ch <= 'Z' ? (char) (ch + ('a' - 'A')) : ch;
+    }
+
 	public boolean relatedWords(String a, String b) {
         return a.equalsIgnoreCase(b);
     }
@@ -75,14 +140,129 @@ public class WordParser {
         return true;
     }
 
+    /**
+     * States whether declensions as per #declension(String, String) always share a common prefix, apart from
+     * umlauts, and differ by at most 3 characters in length. That allows a DeclensionIndex to only check
+     * words within that window instead of all of them.
+     *
+     * Subclasses overriding #declension(String, String) have to override this too if that still holds.
+     */
+    public boolean prefixDeclensions() {
+        return !overrides("declension", String.class, String.class);
+    }
+
     public boolean declension(char a, char b) {
         return  ((a == '\u00E4' && b == 'a') || (a == 'a' && b == '\u00E4')) || // ä <-> a
                 ((a == '\u00FC' && b == 'u') || (a == 'u' && b == '\u00FC')) || // ü <-> u
                 ((a == '\u00F6' && b == 'o') || (a == 'o' && b == '\u00F6'));   // ö <-> o
     }
 
+    /**
+     * Splits a sentence into the terms a word can be found by (see #findWord), i.e. maximal runs of characters
+     * considered word characters by the regex word boundary. Terms are lower-cased the way case insensitive
+     * matching compares them, that is for US-ASCII only.
+     */
+    public List<String> getTerms(String sentence) {
+        List<String> terms = new ArrayList<String>();
+        int start = -1;
+
+        for (int i = 0; i < sentence.length(); i += Character.charCount(sentence.codePointAt(i))) {
+            boolean word = isWordChar(sentence.codePointAt(i));
+
+            if (word && start == -1) {
+                start = i;
+            } else if (!word && start != -1) {
+                terms.add(normalizeTerm(sentence.substring(start, i)));
+                start = -1;
+            }
+        }
+        if (start != -1) {
+            terms.add(normalizeTerm(sentence.substring(start)));
+        }
+
+        return terms;
+    }
+
+    /**
+     * Checks whether a word consists of a single term only, meaning that looking it up among the terms
+     * of a sentence yields the same result as #findWord.
+     */
+    public boolean isTerm(String word) {
+        if (word.isEmpty())
+            return false;
+
+        for (int i = 0; i < word.length(); i += Character.charCount(word.codePointAt(i))) {
+            if (!isWordChar(word.codePointAt(i)))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether a word can be used literally within a regular expression.
+     */
+    public boolean isLiteral(String word) {
+        for (int i = 0; i < word.length(); ++i) {
+            if ("\\^$.|?*+()[]{}".indexOf(word.charAt(i)) != -1)
+                return false;
+        }
+        return true;
+    }
+
+    public String normalizeTerm(String term) {
+        char[] chars = null;
+
+        for (int i = 0; i < term.length(); ++i) {
+            char ch = term.charAt(i);
+
+            if (ch != lowerCase(ch)) {
+                if (chars == null) {
+                    chars = term.toCharArray();
+                }
+                chars[i] = lowerCase(ch);
+            }
+        }
+
+        return chars != null ? new String(chars) : term;
+    }
+
+    /**
+     * Word characters as understood by \b in the patterns of #containsWordPattern, i.e. \w with
+     * Pattern.UNICODE_CHARACTER_CLASS: alphabetic characters, marks, decimal digits, connector punctuation
+     * such as '_' and the join controls.
+     */
+    protected boolean isWordChar(int ch) {
+        return Character.isAlphabetic(ch) || ((WORD_TYPES >> Character.getType(ch)) & 1) != 0 ||
+                ch == '\u200C' || ch == '\u200D';
+    }
+
+    /**
+     * Pattern matching a word case-insensitively within a sentence. Patterns are cached, so that each word
+     * is compiled only once for as long as it is used.
+     *
+     * Word boundaries are those of Pattern.UNICODE_CHARACTER_CLASS, as the default \b differs between
+     * Java versions for non-ASCII characters. Case is still only ignored for US-ASCII characters.
+     */
     public Pattern containsWordPattern(String word) {
-        return Pattern.compile("(?i)\\b" + word + "\\b");
+        Pattern pattern = containsWordPatterns.get(word);
+
+        if (pattern == null) {
+            pattern = Pattern.compile("(?i)(?-u)\\b" + word + "\\b", Pattern.UNICODE_CHARACTER_CLASS);
+            containsWordPatterns.put(word, pattern);
+        }
+
+        return pattern;
+    }
+
+    /**
+     * Checks whether a subclass overrides a method of WordParser.
+     */
+    private boolean overrides(String method, Class<?>... parameterTypes) {
+        try {
+            return getClass().getMethod(method, parameterTypes).getDeclaringClass() != WordParser.class;
+        } catch (NoSuchMethodException e) {
+            return true;
+        }
     }
 
 	public void setWordPattern(Pattern pattern) {
@@ -0,0 +1,60 @@
+package lineup.util;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive ints.
+ */
+public class IntList {
+    private int[] values;
+    private int size;
+
+    public IntList(int capacity) {
+        values = new int[Math.max(capacity, 4)];
+    }
+
+    public IntList() {
+        this(4);
+    }
+
+    /**
+     * Creates a list holding the given values. The array is used as the list's storage until it grows.
+     */
+    public IntList(int[] values) {
+        this.values = values.length > 0 ? values : new int[4];
+        this.size = values.length;
+    }
+
+    public void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    public int get(int index) {
+        if (index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+
+        return values[index];
+    }
+
+    public void set(int index, int value) {
+        if (index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+
+        values[index] = value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
@@ -0,0 +1,200 @@
+package lineup.util;
+
+/**
+ * Hash map from non-negative long keys to int values using open addressing, so that neither keys
+ * nor values are boxed.
+ *
+ * Entries can be iterated over by slot:
+ * <pre>
+ *     for (int slot = 0; slot < map.slots(); ++slot) {
+ *         if (map.used(slot)) { ... map.key(slot) ... map.value(slot) ... }
+ *     }
+ * </pre>
+ */
+public class LongIntMap {
+
+    private static final long FREE = -1;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+
+    public LongIntMap(int expectedSize) {
+        int capacity = 16;
+        while (capacity * 3 / 4 < expectedSize) {
+            capacity *= 2;
+        }
+        init(capacity);
+    }
+
+    public LongIntMap() {
+        this(16);
+    }
+
+    /**
+     * Restores a map from its slots as given by #key and #value, e.g. after reading them from a file.
+     * The arrays are used as the map's storage.
+     *
+     * @param keys Key of every slot.
+     * @param values Value of every slot.
+     */
+    public LongIntMap(long[] keys, int[] values) {
+        if (keys.length != values.length || keys.length < 16 || Integer.bitCount(keys.length) != 1)
+            throw new IllegalArgumentException("Invalid number of slots: " + keys.length);
+
+        this.keys = keys;
+        this.values = values;
+        this.mask = keys.length - 1;
+
+        for (long key : keys) {
+            if (key != FREE) {
+                ++size;
+            }
+        }
+    }
+
+    private void init(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        size = 0;
+
+        java.util.Arrays.fill(keys, FREE);
+    }
+
+    /**
+     * Combines two non-negative ints into a key.
+     */
+    public static long key(int a, int b) {
+        return ((long) a << 32) | b;
+    }
+
+    public int get(long key, int missing) {
+        int slot = slot(key);
+
+        return keys[slot] == key ? values[slot] : missing;
+    }
+
+    public boolean containsKey(long key) {
+        return keys[slot(key)] == key;
+    }
+
+    public void put(long key, int value) {
+        int slot = slot(key);
+
+        if (keys[slot] == FREE) {
+            keys[slot] = key;
+            if (++size > (mask + 1) * 3 / 4) {
+                values[slot] = value;
+                grow();
+                return;
+            }
+        }
+        values[slot] = value;
+    }
+
+    /**
+     * Adds a delta to the value of a key, which is 0 if the key is not contained yet.
+     */
+    public void add(long key, int delta) {
+        int slot = slot(key);
+
+        if (keys[slot] == FREE) {
+            put(key, delta);
+        } else {
+            values[slot] += delta;
+        }
+    }
+
+    /**
+     * Adds all values of another map to this one.
+     */
+    public void addAll(LongIntMap map) {
+        for (int slot = 0; slot < map.slots(); ++slot) {
+            if (map.used(slot)) {
+                add(map.key(slot), map.value(slot));
+            }
+        }
+    }
+
+    /**
+     * Removes all entries whose value is less than the given minimum.
+     */
+    public void retainAtLeast(int min) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        int retained = 0;
+
+        for (int i = 0; i < oldKeys.length; ++i) {
+            if (oldKeys[i] != FREE && oldValues[i] >= min) {
+                ++retained;
+            }
+        }
+
+        int capacity = 16;
+        while (capacity * 3 / 4 < retained) {
+            capacity *= 2;
+        }
+        init(capacity);
+
+        for (int i = 0; i < oldKeys.length; ++i) {
+            if (oldKeys[i] != FREE && oldValues[i] >= min) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int slots() {
+        return keys.length;
+    }
+
+    public boolean used(int slot) {
+        return keys[slot] != FREE;
+    }
+
+    public long key(int slot) {
+        return keys[slot];
+    }
+
+    public int value(int slot) {
+        return values[slot];
+    }
+
+    /**
+     * Finds the slot holding the given key or the free slot where it would be inserted.
+     */
+    private int slot(long key) {
+        int slot = hash(key) & mask;
+
+        while (keys[slot] != FREE && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+
+        init(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; ++i) {
+            if (oldKeys[i] != FREE) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+
+        return (int) key;
+    }
+}
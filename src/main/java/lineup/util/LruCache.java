@@ -0,0 +1,176 @@
+package lineup.util;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe cache of bounded size evicting the least recently used entries first.
+ *
+ * The cache is split into segments by the keys' hashes, each of which is a separately locked LRU map,
+ * so that concurrent lookups of different keys rarely contend. Eviction hence happens per segment.
+ * Hits, misses and evictions are counted.
+ */
+public class LruCache<K, V> {
+
+    private final Segment<K, V>[] segments;
+    private final int capacity;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Creates a new LruCache.
+     *
+     * @param capacity Maximum number of entries.
+     * @param concurrency Number of segments, i.e. the number of threads which can access the cache at once.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public LruCache(int capacity, int concurrency) {
+        int n = Math.max(1, Math.min(concurrency, capacity));
+
+        this.capacity = capacity;
+        this.segments = new Segment[n];
+
+        for (int i = 0; i < n; ++i) {
+            segments[i] = new Segment<K, V>(capacity / n + (i < capacity % n ? 1 : 0), evictions);
+        }
+    }
+
+    public LruCache(int capacity) {
+        this(capacity, 16);
+    }
+
+    /**
+     * Looks up the value for a key and marks it as recently used.
+     *
+     * @return The cached value or null if there is none.
+     */
+    public V get(K key) {
+        Segment<K, V> segment = segment(key);
+        V value;
+
+        synchronized (segment) {
+            value = segment.get(key);
+        }
+
+        if (value != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+
+        return value;
+    }
+
+    public void put(K key, V value) {
+        Segment<K, V> segment = segment(key);
+
+        synchronized (segment) {
+            segment.put(key, value);
+        }
+    }
+
+    public void remove(K key) {
+        Segment<K, V> segment = segment(key);
+
+        synchronized (segment) {
+            segment.remove(key);
+        }
+    }
+
+    public void clear() {
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * A snapshot of the currently cached keys.
+     */
+    public List<K> keys() {
+        List<K> keys = new ArrayList<K>(size());
+
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                keys.addAll(segment.keySet());
+            }
+        }
+
+        return keys;
+    }
+
+    public int size() {
+        int size = 0;
+
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Ratio of lookups which were hits.
+     */
+    public double getHitRate() {
+        long h = getHits();
+        long total = h + getMisses();
+
+        return total > 0 ? h / (double) total : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("LruCache(%d/%d entries, %d hits, %d misses, %d evictions)",
+                size(), getCapacity(), getHits(), getMisses(), getEvictions());
+    }
+
+    private Segment<K, V> segment(K key) {
+        int h = key.hashCode() * 0x9E3779B9;
+
+        return segments[((h ^ (h >>> 16)) & 0x7fffffff) % segments.length];
+    }
+
+    private static class Segment<K, V> extends LinkedHashMap<K, V> {
+        private static final long serialVersionUID = 1L;
+
+        private final int maxSize;
+        private final AtomicLong evictions;
+
+        public Segment(int maxSize, AtomicLong evictions) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+            this.evictions = evictions;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            if (size() > maxSize) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package lineup.util;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * MinHash signatures of sets of keys, e.g. of n-grams (see Shingling#key). The probability that the
+ * signatures of two sets agree at a position is the sets' Jaccard coefficient.
+ *
+ * For locality-sensitive hashing a signature is split into bands of consecutive rows. Sets whose signatures
+ * agree in all rows of at least one band, i.e. whose band hashes collide, are candidates for being similar.
+ * With b bands of r rows that is the case with a probability of 1 - (1 - J^r)^b for a Jaccard coefficient J.
+ */
+public class MinHash {
+
+    private long[] seeds;
+
+    /**
+     * @param size Number of hash functions, i.e. the length of the signatures.
+     * @param seed Seed to derive the hash functions from. Signatures are only comparable if they
+     *             have been computed using the same seed.
+     */
+    public MinHash(int size, long seed) {
+        Random random = new Random(seed);
+
+        seeds = new long[size];
+        for (int i = 0; i < size; ++i) {
+            seeds[i] = random.nextLong();
+        }
+    }
+
+    /**
+     * Computes the signature of a set of keys, e.g. hashes of its elements. Duplicate keys do not make
+     * a difference.
+     */
+    public int[] signature(long[] keys) {
+        int[] signature = new int[seeds.length];
+
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        for (long key : keys) {
+            for (int i = 0; i < seeds.length; ++i) {
+                int value = (int) (mix(key ^ seeds[i]) >>> 33);
+
+                if (value < signature[i]) {
+                    signature[i] = value;
+                }
+            }
+        }
+
+        return signature;
+    }
+
+    /**
+     * Hash of a band of a signature. Different bands with the same rows get different hashes.
+     *
+     * @param signature Signature computed by #signature.
+     * @param band Index of the band.
+     * @param rows Number of rows of every band.
+     */
+    public static long band(int[] signature, int band, int rows) {
+        long hash = band;
+
+        for (int i = band * rows; i < (band + 1) * rows; ++i) {
+            hash = mix(hash * 31 + signature[i]);
+        }
+
+        return hash;
+    }
+
+    /**
+     * Length of the signatures.
+     */
+    public int size() {
+        return seeds.length;
+    }
+
+    /**
+     * Scrambles the bits of a value (finalizer of SplitMix64).
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,68 @@
+package lineup.util;
+
+/**
+ * Retains the n greatest of the doubles added to it using a bounded min-heap.
+ * Doubles are ordered as by Double#compare, i.e. NaN is greater than any other value.
+ */
+public class TopDoubles {
+    private double[] heap;
+    private int size;
+
+    /**
+     * @param n Number of greatest values to retain.
+     */
+    public TopDoubles(int n) {
+        heap = new double[Math.max(n, 0)];
+    }
+
+    public void add(double value) {
+        if (size < heap.length) {
+            int i = size++;
+
+            while (i > 0 && Double.compare(value, heap[(i - 1) / 2]) < 0) {
+                heap[i] = heap[(i - 1) / 2];
+                i = (i - 1) / 2;
+            }
+            heap[i] = value;
+        } else if (size > 0 && Double.compare(value, heap[0]) > 0) {
+            int i = 0;
+
+            while (2 * i + 1 < size) {
+                int child = 2 * i + 1;
+
+                if (child + 1 < size && Double.compare(heap[child + 1], heap[child]) < 0) {
+                    ++child;
+                }
+                if (Double.compare(heap[child], value) >= 0) {
+                    break;
+                }
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = value;
+        }
+    }
+
+    /**
+     * The least of the retained values.
+     *
+     * @throws IllegalStateException if no value is retained.
+     */
+    public double min() {
+        if (size == 0)
+            throw new IllegalStateException("No values retained");
+
+        return heap[0];
+    }
+
+    /**
+     * Number of retained values, which is at most n.
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+}
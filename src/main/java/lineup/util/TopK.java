@@ -0,0 +1,85 @@
+package lineup.util;
+
+/**
+ * Selects the positions of the k greatest scores using a bounded heap, which is cheaper than sorting
+ * all of them if k is small.
+ *
+ * Scores are ordered as by Double#compare, i.e. NaN is greater than any other value. Equal scores keep
+ * the order of their positions, so that the result is the same as that of a stable descending sort.
+ */
+public class TopK {
+
+    /**
+     * Selects the positions of the k greatest scores.
+     *
+     * @param scores Scores to select from.
+     * @param size Number of scores to consider, beginning with the first one.
+     * @param k Number of positions to select.
+     *
+     * @return Positions of at most k scores, the greatest score first.
+     */
+    public static int[] select(double[] scores, int size, int k) {
+        int[] heap = new int[Math.max(0, Math.min(k, size))];
+        int count = 0;
+
+        // min-heap whose root is the position whose score would be removed first
+        for (int i = 0; i < size; ++i) {
+            if (count < heap.length) {
+                int j = count++;
+
+                while (j > 0 && worse(scores, i, heap[(j - 1) / 2])) {
+                    heap[j] = heap[(j - 1) / 2];
+                    j = (j - 1) / 2;
+                }
+                heap[j] = i;
+            } else if (count > 0 && worse(scores, heap[0], i)) {
+                siftDown(scores, heap, count, i);
+            }
+        }
+
+        int[] result = new int[count];
+
+        for (int n = count; n > 0; --n) {
+            result[n - 1] = heap[0];
+            siftDown(scores, heap, n - 1, heap[n - 1]);
+        }
+
+        return result;
+    }
+
+    public static int[] select(double[] scores, int k) {
+        return select(scores, scores.length, k);
+    }
+
+    /**
+     * Replaces the root of a heap and restores the heap property.
+     */
+    private static void siftDown(double[] scores, int[] heap, int size, int position) {
+        int i = 0;
+
+        while (2 * i + 1 < size) {
+            int child = 2 * i + 1;
+
+            if (child + 1 < size && worse(scores, heap[child + 1], heap[child])) {
+                ++child;
+            }
+            if (!worse(scores, heap[child], position)) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        if (size > 0) {
+            heap[i] = position;
+        }
+    }
+
+    /**
+     * States whether the score at position a ranks behind the one at position b.
+     */
+    private static boolean worse(double[] scores, int a, int b) {
+        int c = Double.compare(scores[a], scores[b]);
+
+        return c < 0 || (c == 0 && a > b);
+    }
+}
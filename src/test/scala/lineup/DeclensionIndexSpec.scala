@@ -0,0 +1,114 @@
+package lineup
+
+import org.scalatest.FunSpec
+import org.scalatest.matchers.ShouldMatchers
+
+import collection.JavaConversions._
+
+class DeclensionIndexSpec extends FunSpec with ShouldMatchers {
+
+  import DeclensionIndexSpec._
+
+  describe("A DeclensionIndex") {
+    val index = new DeclensionIndex(vocabulary(words), WordParser.instance)
+
+    it("should find the same declensions as a scan of the vocabulary") {
+      for (word <- words ++ unknownWords) {
+        index.declensions(word).toSet should be (scan(word, words, WordParser.instance))
+      }
+    }
+
+    it("should treat umlauts as their vowels") {
+      index.declensions("Burger").toSet should be (Set("Burger", "Bürger", "Bürgern"))
+      index.declensions("Hauser").toSet should be (Set("Haus", "Häuser", "Häusern"))
+    }
+
+    it("should only find words within 3 characters of the word's length") {
+      index.declensions("Haus").toSet should be (Set("Haus", "Hause", "Hauses", "Häuser", "Häusern"))
+      index.declensions("Parlament").toSet should be (
+        Set("Parlament", "Parlamente", "Parlaments", "Parlamentes"))
+      index.declensions("Parlamentes").toSet should be (Set("Parlament", "Parlamente", "Parlamentes"))
+    }
+
+    it("should not find declensions of words of 3 or less characters") {
+      index.declensions("der") should be ('empty)
+      index.declensions("über").toSet should be (Set("über", "uber"))
+    }
+
+    it("should find words added to the vocabulary after an update") {
+      val vocab = vocabulary(words)
+      val updated = new DeclensionIndex(vocab, WordParser.instance)
+
+      vocab.add("Häusers")
+      updated.declensions("Haus") should not contain ("Häusers")
+
+      updated.update()
+      updated.declensions("Haus").toSet should be (scan("Haus", words :+ "Häusers", WordParser.instance))
+    }
+
+    it("should scan the vocabulary for parsers with other declensions") {
+      val parser = new ReversingWordParser
+      val reversing = new DeclensionIndex(vocabulary(words :+ "suaH"), parser)
+
+      reversing.declensions("Haus") should contain ("suaH")
+      for (word <- words ++ unknownWords) {
+        reversing.declensions(word).toSet should be (scan(word, words :+ "suaH", parser))
+      }
+    }
+  }
+
+  describe("StatAlign's declensions") {
+    it("should be the same as those of the vocabulary scan for the whole corpus") {
+      val stat = new StatAlign(corpus)
+
+      try {
+        val sourceWords = stat.getSourceWords.keySet
+        val targetWords = stat.getTargetWords.keySet
+
+        for ((word, i) <- sourceWords.zipWithIndex if i % 25 == 0; includeSource <- List(true, false)) {
+          stat.sourceDeclensions(word, includeSource).toSet should be (
+            stat.declensions(word, sourceWords, includeSource).toSet)
+        }
+        for ((word, i) <- targetWords.zipWithIndex if i % 25 == 0; includeSource <- List(true, false)) {
+          stat.targetDeclensions(word, includeSource).toSet should be (
+            stat.declensions(word, targetWords, includeSource).toSet)
+        }
+      } finally {
+        stat.close()
+      }
+    }
+  }
+}
+
+object DeclensionIndexSpec {
+  lazy val corpus = new LineupCorpusReader().readCorpus("src/main/resources/europarl3.txt")
+
+  val words = List(
+    "der", "die", "über", "uber", "Haus", "Hause", "Hauses", "Häuser", "Häusern",
+    "Mann", "Mannes", "Männer", "Männern", "Bürger", "Bürgern", "Burger", "Bürgerinnen",
+    "Parlament", "Parlamente", "Parlaments", "Parlamentes", "Parlamentarier",
+    "Kommission", "Kommissionen", "Kommissar", "Übersetzung", "Ubersetzungen")
+
+  val unknownWords = List("Hauser", "Parlamenten", "Kommissars", "Mänz", "xyz", "")
+
+  def vocabulary(words: Seq[String]): Vocabulary = {
+    val vocab = new Vocabulary
+
+    words.foreach(vocab.add(_, 1))
+    vocab
+  }
+
+  /**
+   * The vocabulary scan StatAlign used to find declensions before there was an index.
+   */
+  def scan(word: String, words: Seq[String], parser: WordParser): Set[String] =
+    if (word.size > 3) words.filter(w => w.size > 3 && parser.declension(word, w)).toSet
+    else Set()
+
+  /**
+   * Also relates words to their reverse, which do not share a prefix.
+   */
+  class ReversingWordParser extends WordParser {
+    override def declension(a: String, b: String): Boolean = a.reverse == b || super.declension(a, b)
+  }
+}
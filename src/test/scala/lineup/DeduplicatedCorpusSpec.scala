@@ -0,0 +1,122 @@
+package lineup
+
+import org.scalatest.FunSpec
+import org.scalatest.matchers.ShouldMatchers
+
+import collection.JavaConversions._
+import scala.util.Random
+
+class DeduplicatedCorpusSpec extends FunSpec with ShouldMatchers {
+
+  import DeduplicatedCorpusSpec._
+
+  describe("A DeduplicatedCorpus") {
+    val dedup = DeduplicatedCorpus.of[Translation](duplicated)
+
+    it("should keep every distinct translation once in the order of its first occurrence") {
+      dedup.size should be (distinct.size)
+      dedup.totalSize should be (duplicated.size)
+      dedup.toList.map(content) should be (distinct)
+    }
+
+    it("should count how often every translation occurred") {
+      for ((tr, i) <- dedup.zipWithIndex) {
+        dedup.multiplicity(i) should be (duplicated.count(content(_) == content(tr)))
+      }
+    }
+
+    it("should treat sentences differing in whitespace only as equal") {
+      val spaced = new Translation("de", "en", "  das   Haus ", "the\thouse")
+      val corpus = DeduplicatedCorpus.of[Translation](List(new Translation("de", "en", "das Haus", "the house"), spaced))
+
+      corpus.size should be (1)
+      corpus.multiplicity(0) should be (2)
+    }
+  }
+
+  describe("A model of a DeduplicatedCorpus") {
+    it("should have the same probabilities as a model of the duplicated corpus") {
+      withModels(0) { (plain, weighted) =>
+        plain.getSourceWordCount should be (weighted.getSourceWordCount)
+        plain.getTargetWordCount should be (weighted.getTargetWordCount)
+
+        for ((source, target) <- wordPairs(plain)) {
+          same(plain.translationProbability(source, target), weighted.translationProbability(source, target))
+          same(plain.reverseTranslationProbability(target, source),
+            weighted.reverseTranslationProbability(target, source))
+          same(plain.sourceProbability(source), weighted.sourceProbability(source))
+          same(plain.targetProbability(target), weighted.targetProbability(target))
+        }
+      }
+    }
+
+    it("should align translations like a model of the duplicated corpus") {
+      for (minCount <- List(0, 1, 3)) {
+        withModels(minCount) { (plain, weighted) =>
+          for (i <- 0 until weighted.getCorpus.size by 7) {
+            val j = duplicated.indexWhere(content(_) == content(weighted.getCorpus.get(i)))
+
+            weighted.associate(i).toString should be (plain.associate(j).toString)
+          }
+        }
+      }
+    }
+  }
+}
+
+object DeduplicatedCorpusSpec {
+  lazy val corpus = new LineupCorpusReader().readCorpus("src/main/resources/europarl3.txt").take(600)
+
+  /**
+   * The corpus with some of its translations repeated, partly with different whitespace.
+   */
+  lazy val duplicated: List[Translation] = {
+    val random = new Random(42)
+    val repeated = List.fill(300)(corpus(random.nextInt(100)))
+    val spaced = corpus.take(20).map { tr =>
+      new Translation(tr.getSourceLanguage, tr.getTargetLanguage,
+        " " + tr.getSourceSentences.get(0) + "  ", tr.getTargetSentences.get(0).replace(" ", "  "))
+    }
+
+    (corpus ++ repeated ++ spaced).map(new Translation(_)).toList
+  }
+
+  lazy val distinct = duplicated.map(content).distinct
+
+  def content(tr: NtoNTranslation): String =
+    (tr.getSourceSentences.toList ++ List("|") ++ tr.getTargetSentences.toList).map(_.trim.replaceAll("\\s+", " ")).toString
+
+  /**
+   * Builds models of the duplicated corpus and of its deduplicated version, optionally with co-occurrences.
+   */
+  def withModels(minCount: Int)(test: (StatAlign[Translation], StatAlign[Translation]) => Unit) {
+    val plain = new StatAlign[Translation](duplicated)
+    val weighted = new StatAlign[Translation](DeduplicatedCorpus.of[Translation](duplicated))
+
+    try {
+      if (minCount > 0) {
+        plain.buildCooccurrences(minCount)
+        weighted.buildCooccurrences(minCount)
+      }
+      test(plain, weighted)
+    } finally {
+      plain.close()
+      weighted.close()
+    }
+  }
+
+  def wordPairs(model: StatAlign[Translation]): Seq[(String, String)] = {
+    val random = new Random(42)
+
+    for (i <- 0 until 200; source = words(model, i, true); target = words(model, i, false)
+         if source.nonEmpty && target.nonEmpty; n <- 1 to 5)
+      yield (source(random.nextInt(source.size)), target(random.nextInt(target.size)))
+  }
+
+  def words(model: StatAlign[Translation], index: Int, source: Boolean): IndexedSeq[String] =
+    model.getTokenizedCorpus.tokens(index, source).getWords.toIndexedSeq
+
+  def same(a: Double, b: Double) {
+    assert(java.lang.Double.compare(a, b) == 0, a + " != " + b)
+  }
+}
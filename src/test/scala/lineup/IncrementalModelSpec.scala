@@ -0,0 +1,128 @@
+package lineup
+
+import org.scalatest.FunSpec
+import org.scalatest.matchers.ShouldMatchers
+
+import collection.JavaConversions._
+import scala.util.Random
+
+class IncrementalModelSpec extends FunSpec with ShouldMatchers {
+
+  import IncrementalModelSpec._
+
+  /**
+   * Compares the co-occurrence counts of two models by their terms, as term ids may differ.
+   */
+  def sameCooccurrences(full: StatAlign[Translation], incremental: StatAlign[Translation]) {
+    val expected = full.getCooccurrences
+    val actual = incremental.getCooccurrences
+    val counts = expected.getCounts
+
+    actual.size should be (expected.size)
+    actual.getMinCount should be (expected.getMinCount)
+    for (slot <- 0 until counts.slots if counts.used(slot)) {
+      val source = full.getPostingIndex.getTerms(true).word((counts.key(slot) >>> 32).toInt)
+      val target = full.getPostingIndex.getTerms(false).word(counts.key(slot).toInt)
+
+      actual.count(source, target) should be (counts.value(slot))
+    }
+  }
+
+  describe("A model built incrementally") {
+    it("should count the same co-occurrences as a model of the whole corpus") {
+      for (minCount <- List(1, 3)) {
+        withModels(minCount) { (full, incremental) =>
+          sameCooccurrences(full, incremental)
+        }
+      }
+    }
+
+    it("should have the same probabilities as a model of the whole corpus") {
+      for (minCount <- List(0, 3)) {
+        withModels(minCount) { (full, incremental) =>
+          incremental.getSourceWordCount should be (full.getSourceWordCount)
+          incremental.getTargetWordCount should be (full.getTargetWordCount)
+
+          for ((source, target) <- wordPairs(full)) {
+            same(incremental.translationProbability(source, target), full.translationProbability(source, target))
+            same(incremental.reverseTranslationProbability(target, source),
+              full.reverseTranslationProbability(target, source))
+            same(incremental.sourceProbability(source), full.sourceProbability(source))
+            same(incremental.targetProbability(target), full.targetProbability(target))
+          }
+        }
+      }
+    }
+
+    it("should find the same declensions although they have been cached before") {
+      withModels(0) { (full, incremental) =>
+        for (word <- cachedWords) {
+          incremental.sourceDeclensions(word, true) should be (full.sourceDeclensions(word, true))
+        }
+        for (word <- cachedTargetWords) {
+          incremental.targetDeclensions(word, true) should be (full.targetDeclensions(word, true))
+        }
+      }
+    }
+
+    it("should align translations like a model of the whole corpus") {
+      withModels(3) { (full, incremental) =>
+        for (i <- 0 until corpus.size by 37) {
+          incremental.associate(i).toString should be (full.associate(i).toString)
+        }
+      }
+    }
+  }
+}
+
+object IncrementalModelSpec {
+  lazy val corpus = new LineupCorpusReader().readCorpus("src/main/resources/europarl3.txt").take(1500).toList
+
+  /**
+   * Source words whose declensions are looked up before the rest of the corpus is added, among them words
+   * getting new declensions by the added translations.
+   */
+  val cachedWords = List("Parlament", "Kommission", "Bericht", "Europa", "Haus", "Bürger", "Frage", "Rat")
+
+  val cachedTargetWords = List("Parliament", "Commission", "report", "Europe", "house", "citizen", "question")
+
+  /**
+   * Builds a model of the whole corpus and one of its first 400 translations to which the others are
+   * added in two batches, optionally both with co-occurrences.
+   */
+  def withModels(minCount: Int)(test: (StatAlign[Translation], StatAlign[Translation]) => Unit) {
+    val full = new StatAlign[Translation](corpus)
+    val incremental = new StatAlign[Translation](corpus.take(400))
+
+    try {
+      if (minCount > 0) {
+        full.buildCooccurrences(minCount)
+        incremental.buildCooccurrences(minCount)
+      }
+      cachedWords.foreach(incremental.sourceDeclensions(_, true))
+      cachedTargetWords.foreach(incremental.targetDeclensions(_, true))
+
+      incremental.addTranslations(corpus.slice(400, 900))
+      incremental.addTranslations(corpus.drop(900))
+      test(full, incremental)
+    } finally {
+      full.close()
+      incremental.close()
+    }
+  }
+
+  def wordPairs(model: StatAlign[Translation]): Seq[(String, String)] = {
+    val random = new Random(42)
+
+    for (i <- 0 until corpus.size by 5; source = words(model, i, true); target = words(model, i, false)
+         if source.nonEmpty && target.nonEmpty)
+      yield (source(random.nextInt(source.size)), target(random.nextInt(target.size)))
+  }
+
+  def words(model: StatAlign[Translation], index: Int, source: Boolean): IndexedSeq[String] =
+    model.getTokenizedCorpus.tokens(index, source).getWords.toIndexedSeq
+
+  def same(a: Double, b: Double) {
+    assert(java.lang.Double.compare(a, b) == 0, a + " != " + b)
+  }
+}
@@ -0,0 +1,116 @@
+package lineup
+
+import org.scalatest.{BeforeAndAfterAll, FunSpec}
+import org.scalatest.matchers.ShouldMatchers
+
+import java.io._
+import java.util.concurrent.Executors
+
+import collection.JavaConversions._
+import scala.io.Source
+
+class MappedCorpusReaderSpec extends FunSpec with ShouldMatchers with BeforeAndAfterAll {
+
+  import MappedCorpusReaderSpec._
+
+  val exec = Executors.newFixedThreadPool(3)
+
+  override def afterAll() {
+    exec.shutdown()
+  }
+
+  describe("A MappedCorpusReader") {
+    it("should read the same corpus as the LineupCorpusReader") {
+      val expected = read(new LineupCorpusReader, corpusFile)
+
+      expected.translations.size should be (6942)
+      for (partitions <- List(1, 3, 16)) {
+        read(new MappedCorpusReader(exec, partitions), corpusFile) should be (expected)
+      }
+      read(new MappedCorpusReader, corpusFile) should be (expected)
+    }
+
+    it("should read chunks of several corpora with any line breaks") {
+      val text = Source.fromFile(corpusFile, "UTF-8").mkString * 4
+
+      for (lines <- List(text, text.replace("\n", "\r\n"), text.replace("\n", "\r"), text + "de 1: only one")) {
+        val file = write(lines)
+
+        read(new MappedCorpusReader(exec, 7), file) should be (read(new LineupCorpusReader, file))
+      }
+    }
+
+    it("should report the same first format error as the LineupCorpusReader") {
+      val file = write("de 1: Hallo\nen 1: Hello\nxx\nen 2: foo\nde 3: a\nfr 3: b\n")
+      val expected = read(new LineupCorpusReader, file)
+
+      expected.translations.size should be (1)
+      expected.errors should be ("Invalid corpus format: Expected language, got: xx\n")
+      read(new MappedCorpusReader(exec, 2), file) should be (expected)
+    }
+
+    it("should parse lines just like the LineupCorpusReader") {
+      for (text <- cases) {
+        val file = write(text)
+
+        read(new MappedCorpusReader(exec, 3), file) should be (read(new LineupCorpusReader, file))
+      }
+    }
+
+    it("should deduplicate the same way as the LineupCorpusReader") {
+      val file = write("de 1: a\nen 1: b\nde 1: c\nen 1: d\nde 1: a\nen 1: b\n")
+      val lineup = new LineupCorpusReader
+      val mapped = new MappedCorpusReader(exec, 2)
+
+      lineup.setDeduplicate(true)
+      mapped.setDeduplicate(true)
+      read(mapped, file) should be (read(lineup, file))
+      mapped.readCorpus(file.getPath).isInstanceOf[DeduplicatedCorpus[_]] should be (true)
+    }
+  }
+}
+
+object MappedCorpusReaderSpec {
+  val corpusFile = new File("src/main/resources/europarl3.txt")
+
+  val cases = List(
+    "", "\n\n", "# c\n  \n", "de 1: a\nen 1: b\nfr 1: c\nen 1: d\n", "de 1: a\nen 1: b\nde 1: c\nfr 1: d\n",
+    "de 1 a\nen 1: b\n", "de 1: a\nen 1 b\n", "de 1:\nen 1: b\n", "de 1: a|b:c\t\nen 1: x||y: \n",
+    "de 12: a\nen 1: b\n", "De 1: a\nen 1: b\n", "de 1: a\u0085\nen 1: c\n", "de 1: ä ö ü ß\nen 1: ∑ €\n",
+    "  # x\n\t de 1: a  \n en 1: b\u0000\n", "de 1: :::\nen 1: b\n", "de 1: a :\nen 1: b::\n",
+    "de 1: a\nen 1: b\nde 1: c\n\n# t\nen 1: d\nde 1:\nen 1: e\n", "foo\nbar\n", "de 1: a\nen 1: b\nfoo\nbar\n")
+
+  case class Result(translations: List[String], errors: String)
+
+  /**
+   * Reads a corpus file rendering every translation and capturing the errors reported on System.err.
+   */
+  def read(reader: LineupCorpusReader, file: File): Result = {
+    val err = System.err
+    val errors = new ByteArrayOutputStream
+
+    System.setErr(new PrintStream(errors, true, "UTF-8"))
+    try {
+      val translations = reader.readCorpus(file.getPath).toList.map { tr =>
+        tr.getSourceLanguage + "/" + tr.getTargetLanguage + tr.getSourceSentences + tr.getTargetSentences
+      }
+
+      Result(translations, errors.toString("UTF-8"))
+    } finally {
+      System.setErr(err)
+    }
+  }
+
+  def write(text: String): File = {
+    val file = File.createTempFile("corpus", ".txt")
+    val out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8")
+
+    file.deleteOnExit()
+    try {
+      out.write(text)
+    } finally {
+      out.close()
+    }
+    file
+  }
+}
@@ -0,0 +1,123 @@
+package lineup
+
+import org.scalatest.FunSpec
+import org.scalatest.matchers.ShouldMatchers
+
+import java.io._
+import java.nio.ByteBuffer
+
+import collection.JavaConversions._
+
+class ModelSnapshotSpec extends FunSpec with ShouldMatchers {
+
+  import ModelSnapshotSpec._
+
+  /**
+   * Models saved by #snapshot to compare loaded ones with.
+   */
+  val models = collection.mutable.Map[File, StatAlign[Translation]]()
+
+  def snapshot(corpus: java.util.List[Translation], minCount: Int): File = {
+    val file = File.createTempFile("model", ".bin")
+    val model = new StatAlign[Translation](corpus)
+
+    file.deleteOnExit()
+    if (minCount > 0) {
+      model.buildCooccurrences(minCount)
+    }
+    model.save(file)
+    models(file) = model
+    file
+  }
+
+  def roundTrip(corpus: java.util.List[Translation], minCount: Int) {
+    compare(snapshot(corpus, minCount))
+  }
+
+  /**
+   * Loads a snapshot and compares it to the model it has been saved from.
+   */
+  def compare(file: File) {
+    val saved = models.remove(file).get
+    val loaded = StatAlign.load(file)
+
+    try {
+      loaded.getCorpus.size should be (saved.getCorpus.size)
+      loaded.getSourceWordCount should be (saved.getSourceWordCount)
+      loaded.getTargetWordCount should be (saved.getTargetWordCount)
+      loaded.getTokenizedCorpus.isWeighted should be (saved.getTokenizedCorpus.isWeighted)
+      loaded.getTokenizedCorpus.totalWeight should be (saved.getTokenizedCorpus.totalWeight)
+      Option(loaded.getCooccurrences).map(_.size) should be (Option(saved.getCooccurrences).map(_.size))
+
+      for (i <- 0 until saved.getCorpus.size by 13) {
+        loaded.getCorpus.get(i).getSourceSentences.toList should be (saved.getCorpus.get(i).getSourceSentences.toList)
+        loaded.getCorpus.get(i).getTargetSentences.toList should be (saved.getCorpus.get(i).getTargetSentences.toList)
+        loaded.associate(i).toString should be (saved.associate(i).toString)
+      }
+    } finally {
+      saved.close()
+      loaded.close()
+    }
+  }
+
+  describe("A ModelSnapshot") {
+    it("should restore a model aligning like the saved one") {
+      roundTrip(corpus, 0)
+    }
+
+    it("should restore the co-occurrence counts") {
+      roundTrip(corpus, 2)
+    }
+
+    it("should restore the weights of a deduplicated corpus") {
+      roundTrip(DeduplicatedCorpus.of[Translation](corpus ++ corpus.take(100)), 0)
+    }
+
+    it("should reject files which are no snapshots or of an unknown version") {
+      val file = snapshot(corpus, 0)
+      val bytes = readBytes(file)
+
+      ByteBuffer.wrap(bytes).putInt(4, ModelSnapshot.VERSION + 1)
+      models.remove(file).get.close()
+      writeBytes(file, bytes)
+      evaluating { ModelSnapshot.read(file, WordParser.instance) } should produce [IOException]
+
+      evaluating {
+        ModelSnapshot.read(new File("src/main/resources/europarl3.txt"), WordParser.instance)
+      } should produce [IOException]
+    }
+
+    it("should reject snapshots created with another WordParser") {
+      val file = snapshot(corpus, 0)
+
+      models.remove(file).get.close()
+      evaluating { ModelSnapshot.read(file, new WordParser {}) } should produce [IllegalArgumentException]
+    }
+  }
+}
+
+object ModelSnapshotSpec {
+  lazy val corpus = new LineupCorpusReader().readCorpus("src/main/resources/europarl3.txt").take(600).toList
+
+  def readBytes(file: File): Array[Byte] = {
+    val bytes = new Array[Byte](file.length.toInt)
+    val in = new DataInputStream(new FileInputStream(file))
+
+    try {
+      in.readFully(bytes)
+    } finally {
+      in.close()
+    }
+    bytes
+  }
+
+  def writeBytes(file: File, bytes: Array[Byte]) {
+    val out = new FileOutputStream(file)
+
+    try {
+      out.write(bytes)
+    } finally {
+      out.close()
+    }
+  }
+}
@@ -0,0 +1,103 @@
+package lineup
+
+import org.scalatest.FunSpec
+import org.scalatest.matchers.ShouldMatchers
+
+import java.io.File
+
+import collection.JavaConversions._
+
+class ShardMergeSpec extends FunSpec with ShouldMatchers {
+
+  import ShardMergeSpec._
+
+  describe("A model merged from shards") {
+    it("should hold the same corpus and vocabularies as a model of the whole corpus") {
+      withModels { (full, merged) =>
+        merged.getCorpus.size should be (full.getCorpus.size)
+        for (i <- 0 until full.getCorpus.size by 11) {
+          merged.getCorpus.get(i).getSourceSentences.toList should be (full.getCorpus.get(i).getSourceSentences.toList)
+          merged.getCorpus.get(i).getTargetSentences.toList should be (full.getCorpus.get(i).getTargetSentences.toList)
+        }
+
+        merged.getSourceWords.toMap should be (full.getSourceWords.toMap)
+        merged.getTargetWords.toMap should be (full.getTargetWords.toMap)
+        merged.getSourceWordCount should be (full.getSourceWordCount)
+        merged.getTargetWordCount should be (full.getTargetWordCount)
+      }
+    }
+
+    it("should have the same posting lists as a model of the whole corpus") {
+      withModels { (full, merged) =>
+        for (source <- List(true, false)) {
+          val terms = full.getPostingIndex.getTerms(source)
+
+          merged.getPostingIndex.getTerms(source).size should be (terms.size)
+          for (id <- 0 until terms.size) {
+            val term = terms.word(id)
+
+            merged.getPostingIndex.postings(term, source).toList should be (
+              full.getPostingIndex.postings(term, source).toList)
+          }
+        }
+      }
+    }
+
+    it("should count the same co-occurrences as a model of the whole corpus") {
+      withModels { (full, merged) =>
+        full.buildCooccurrences(2)
+        merged.buildCooccurrences(2)
+
+        val counts = full.getCooccurrences.getCounts
+
+        merged.getCooccurrences.size should be (full.getCooccurrences.size)
+        for (slot <- 0 until counts.slots if counts.used(slot)) {
+          val source = full.getPostingIndex.getTerms(true).word((counts.key(slot) >>> 32).toInt)
+          val target = full.getPostingIndex.getTerms(false).word(counts.key(slot).toInt)
+
+          merged.getCooccurrences.count(source, target) should be (counts.value(slot))
+        }
+      }
+    }
+
+    it("should align translations like a model of the whole corpus") {
+      withModels { (full, merged) =>
+        for (i <- 0 until full.getCorpus.size by 29) {
+          merged.associate(i).toString should be (full.associate(i).toString)
+        }
+      }
+    }
+  }
+}
+
+object ShardMergeSpec {
+  lazy val corpus = new LineupCorpusReader().readCorpus("src/main/resources/europarl3.txt").take(1200).toList
+
+  /**
+   * Bounds of shards of different sizes including one of a single translation.
+   */
+  val bounds = List(0, 1, 350, 700, 1200)
+
+  /**
+   * Writes the corpus' shards, merges them into one model and builds one of the whole corpus.
+   */
+  def withModels(test: (StatAlign[Translation], StatAlign[Translation]) => Unit) {
+    val files = for ((from, to) <- bounds.zip(bounds.tail)) yield {
+      val file = File.createTempFile("shard", ".bin")
+
+      file.deleteOnExit()
+      ModelSnapshot.writeShard(corpus.slice(from, to), WordParser.instance, file)
+      file
+    }
+    val full = new StatAlign[Translation](corpus)
+    val merged = StatAlign.merge(files, WordParser.instance)
+
+    try {
+      test(full, merged)
+    } finally {
+      full.close()
+      merged.close()
+      files.foreach(_.delete())
+    }
+  }
+}
@@ -0,0 +1,100 @@
+package lineup
+
+import org.scalatest.FunSpec
+import org.scalatest.matchers.ShouldMatchers
+
+import collection.JavaConversions._
+import scala.util.Random
+
+class ShinglingSpec extends FunSpec with ShouldMatchers {
+
+  import ShinglingSpec._
+
+  describe("Shingles") {
+    it("should resemble others as much as the set-based reference") {
+      for (w <- 1 to 5; a <- words; b <- words) {
+        withClue(w + "-shingles of '" + a + "' and '" + b + "'") {
+          shingles(w, a).resemblance(shingles(w, b)) should be (resemblance(w, a, b))
+        }
+      }
+    }
+
+    it("should count repeated n-grams like the reference") {
+      resemblance(2, "aaaa", "aa") should be (3 / 6.0)
+      shingles(2, "aaaa").resemblance(shingles(2, "aa")) should be (3 / 6.0)
+      shingles(2, "aa").resemblance(shingles(2, "aaaa")) should be (1 / 2.0)
+      shingles(2, "abab").resemblance(shingles(2, "ba")) should be (resemblance(2, "abab", "ba"))
+    }
+
+    it("should treat empty and short words as a single n-gram") {
+      shingles(3, "").toList should be (List(""))
+      shingles(3, "ab").toList should be (List("ab"))
+      shingles(3, "").resemblance(shingles(3, "")) should be (resemblance(3, "", ""))
+      shingles(3, "").resemblance(shingles(3, "abc")) should be (0.0)
+      shingles(3, "abc").resemblance(shingles(3, "")) should be (0.0)
+    }
+
+    it("should hold the same n-grams as Shingling#addShingles") {
+      for (w <- 1 to 5; word <- words) {
+        val expected = new java.util.ArrayList[String]
+
+        shingling(w).addShingles(expected, word)
+        shingles(w, word).toList.sorted should be (expected.toList.sorted)
+      }
+    }
+  }
+
+  describe("A Shingling") {
+    it("should have no shingles for an empty input") {
+      new Shingling(2, "", WordParser.instance).getShingles should be ('empty)
+      new Shingling(2, List[String](), WordParser.instance).getShingles should be ('empty)
+    }
+
+    it("should have shingles for every word of its input in order") {
+      val input = "Wir reden über Europa"
+
+      new Shingling(3, input, WordParser.instance).getShingles.map(_.getWord).toList should be (
+        List("Wir", "reden", "über", "Europa"))
+      new Shingling(3, WordParser.instance.getWords(input), WordParser.instance).getShingles.map(_.getWord).toList should be (
+        List("Wir", "reden", "über", "Europa"))
+    }
+  }
+}
+
+object ShinglingSpec {
+  /**
+   * Words with repeated n-grams, empty ones, short ones and some with nothing in common.
+   */
+  lazy val words: List[String] = {
+    val random = new Random(42)
+    val generated = List.fill(60)(List.fill(random.nextInt(9))("abäA"(random.nextInt(4))).mkString)
+
+    (List("", "a", "aa", "aaaa", "abab", "ba", "Haus", "Häuser", "Parlament", "parlamentarisch", "xyz") ++
+      generated).distinct
+  }
+
+  def shingling(w: Int) = new Shingling(w, "", WordParser.instance)
+
+  def shingles(w: Int, word: String): Shingling#Shingles = {
+    val shingling = this.shingling(w)
+
+    new shingling.Shingles(word)
+  }
+
+  def ngrams(w: Int, word: String): List[String] =
+    if (word.length < w) List(word) else word.sliding(w).toList
+
+  /**
+   * Resemblance as it used to be computed on lists of n-grams: the intersection are the first word's n-grams,
+   * including repeated ones, contained in the set of the other word's n-grams. The union are the first word's
+   * n-grams counted twice plus those in the other set which the first word does not have.
+   */
+  def resemblance(w: Int, a: String, b: String): Double = {
+    val first = ngrams(w, a)
+    val other = ngrams(w, b).toSet
+    val intersection = first.count(other.contains)
+    val union = 2 * first.size + (other -- first).size
+
+    intersection / union.toDouble
+  }
+}
@@ -0,0 +1,110 @@
+package lineup
+
+import org.scalatest.FunSpec
+import org.scalatest.matchers.ShouldMatchers
+
+import lineup.util.{TopDoubles, TopK}
+
+import collection.JavaConversions._
+import scala.util.Random
+
+class TopKSpec extends FunSpec with ShouldMatchers {
+
+  import TopKSpec._
+
+  describe("TopK") {
+    it("should select the positions of the greatest scores, the greatest first") {
+      TopK.select(Array(0.1, 0.7, 0.3, 0.9), 2).toList should be (List(3, 1))
+    }
+
+    it("should keep the order of positions of equal scores") {
+      TopK.select(Array(0.5, 0.2, 0.5, 0.5), 3).toList should be (List(0, 2, 3))
+    }
+
+    it("should rank NaN above any other score") {
+      TopK.select(Array(0.5, Double.NaN, Double.PositiveInfinity, Double.NaN), 3).toList should be (List(1, 3, 2))
+    }
+
+    it("should select at most as many positions as there are scores") {
+      TopK.select(Array(0.1, 0.2), 5).toList should be (List(1, 0))
+      TopK.select(Array(0.1, 0.2, 0.3), 2, 5).toList should be (List(1, 0))
+      TopK.select(Array(0.1, 0.2), 0).toList should be ('empty)
+      TopK.select(Array(0.1, 0.2), -1).toList should be ('empty)
+      TopK.select(Array[Double](), 3).toList should be ('empty)
+    }
+
+    it("should be the same as a stable descending sort") {
+      val random = new Random(42)
+
+      for (n <- 1 to 1000) {
+        val scores = randomScores(random)
+        val k = random.nextInt(scores.size + 2)
+
+        TopK.select(scores, k).toList should be (sortedPositions(scores).take(k))
+      }
+    }
+  }
+
+  describe("TopDoubles") {
+    it("should retain the least of the greatest values as its minimum") {
+      val random = new Random(42)
+
+      for (n <- 1 to 1000) {
+        val values = randomScores(random)
+        val k = random.nextInt(values.size + 2)
+        val top = new TopDoubles(k)
+
+        values.foreach(top.add(_))
+        top.size should be (math.min(k, values.size))
+        if (!top.isEmpty) {
+          java.lang.Double.compare(top.min, values.sortWith(greater).take(k).last) should be (0)
+        }
+      }
+    }
+
+    it("should not have a minimum if it retains no values") {
+      evaluating { new TopDoubles(0).min } should produce [IllegalStateException]
+    }
+  }
+
+  describe("PossibleTranslations' retainMostLikely") {
+    it("should be the same as sorting and pruning the candidates") {
+      val random = new Random(42)
+
+      for (n <- 1 to 500) {
+        val scores = randomScores(random)
+        val k = random.nextInt(scores.size + 2)
+        val retained = translations(scores)
+        val sorted = translations(scores)
+
+        retained.retainMostLikely(k)
+        sorted.sort()
+        sorted.prune(k)
+
+        retained.getCandidates.toList should be (sorted.getCandidates.toList)
+      }
+    }
+  }
+}
+
+object TopKSpec {
+  val greater = (a: Double, b: Double) => java.lang.Double.compare(a, b) > 0
+
+  def randomScores(random: Random): Array[Double] = {
+    val values = Array(0.0, -0.0, 0.1, 0.5, 1.0, Double.NegativeInfinity, Double.NaN)
+
+    Array.fill(random.nextInt(20)) {
+      if (random.nextBoolean()) values(random.nextInt(values.size)) else random.nextDouble()
+    }
+  }
+
+  /**
+   * Positions of the scores sorted in descending order, equal scores by their position.
+   */
+  def sortedPositions(scores: Array[Double]): List[Int] =
+    scores.indices.toList.sortWith((a, b) => greater(scores(a), scores(b)))
+
+  def translations(scores: Array[Double]): PossibleTranslations =
+    new PossibleTranslations("word", new java.util.LinkedList[Candidate](
+      scores.toList.zipWithIndex.map { case (score, i) => new Candidate("w" + i, score) }))
+}
@@ -0,0 +1,81 @@
+package lineup
+
+import org.scalatest.FunSpec
+import org.scalatest.matchers.ShouldMatchers
+
+import collection.JavaConversions._
+import scala.util.Random
+
+class WordParserSpec extends FunSpec with ShouldMatchers {
+
+  import WordParserSpec._
+
+  describe("A WordParser") {
+    val parser = WordParser.instance
+
+    it("should find words next to non-ASCII characters like its regular expressions") {
+      for ((word, sentence) <- examples) {
+        withClue(word + " in " + sentence) {
+          parser.containsWord(word, sentence) should be (patternFinds(parser, word, sentence))
+        }
+      }
+    }
+
+    it("should find words within random sentences like its regular expressions") {
+      for ((word, sentence) <- randomPairs) {
+        withClue(escape(word) + " in " + escape(sentence)) {
+          parser.containsWord(word, sentence) should be (patternFinds(parser, word, sentence))
+        }
+      }
+    }
+
+    it("should split sentences into the terms its regular expressions delimit") {
+      for ((word, sentence) <- examples ++ randomPairs if parser.isTerm(word)) {
+        withClue(escape(word) + " in " + escape(sentence)) {
+          parser.getTerms(sentence).contains(parser.normalizeTerm(word)) should be (patternFinds(parser, word, sentence))
+        }
+      }
+    }
+
+    it("should only ignore the case of US-ASCII characters") {
+      parser.containsWord("haus", "Das HAUS") should be (true)
+      parser.containsWord("über", "ÜBER alles") should be (false)
+      patternFinds(parser, "über", "ÜBER alles") should be (false)
+    }
+  }
+}
+
+object WordParserSpec {
+  val examples = List(
+    ("über", "Wir reden über Europa"), ("ab", "äab"), ("ab", "abä"), ("Europa", "Europas"),
+    ("été", "l'été"), ("x", "\u2167x"), ("x", "x\u093E"), ("a", "a\u203Fb"), ("a", "\u200Da"),
+    ("e", "e\u0301t"), ("b", "\uD835\uDC00b"), ("b", "\uD83D\uDE00b"), ("1", "\u0663 1"), ("_", "a _ b"))
+
+  /**
+   * Characters of different categories around word boundaries: letters, marks, digits, connector
+   * punctuation, letter numbers, join controls, supplementary characters, spaces and punctuation.
+   */
+  val alphabet = List(
+    "a", "b", "A", "ä", "Ü", "ß", "\u0301", "\u20DD", "\u093E", "1", "\u0663", "_", "\u203F",
+    "\u2167", "\u200D", "\uD835\uDC00", "\uD83D\uDE00", " ", "\u00A0", "-", ",", "'")
+
+  lazy val randomPairs: Seq[(String, String)] = {
+    val random = new Random(42)
+
+    for (i <- 0 until 2000) yield {
+      val chars = List.fill(1 + random.nextInt(12))(alphabet(random.nextInt(alphabet.size)))
+      val from = random.nextInt(chars.size)
+      val to = from + 1 + random.nextInt(math.min(3, chars.size - from))
+      val word = if (i % 4 == 0) List.fill(1 + random.nextInt(2))(alphabet(random.nextInt(7))).mkString
+                 else chars.slice(from, to).mkString
+
+      (word, chars.mkString)
+    }
+  }
+
+  def patternFinds(parser: WordParser, word: String, sentence: String): Boolean =
+    parser.containsWordPattern(word).matcher(sentence).find()
+
+  def escape(string: String): String =
+    string.flatMap(ch => if (ch < 128) ch.toString else "U+%04X ".format(ch.toInt))
+}
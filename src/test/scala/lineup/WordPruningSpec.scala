@@ -0,0 +1,133 @@
+package lineup
+
+import org.scalatest.{BeforeAndAfterAll, FunSpec}
+import org.scalatest.matchers.ShouldMatchers
+
+import collection.JavaConversions._
+import scala.util.Random
+
+class WordPruningSpec extends FunSpec with ShouldMatchers with BeforeAndAfterAll {
+
+  import WordPruningSpec._
+
+  val stat = new StatAlign[Translation](List(new Translation("de", "en", "das Haus", "the house")))
+
+  override def afterAll() {
+    stat.close()
+  }
+
+  describe("StatAlign's pruneMatches") {
+
+    it("should retain as many candidates of a word as it occurs in the target sentence, the most likely first") {
+      val pts = List(
+        matches("das", "the" -> 0.5, "house" -> 0.1),
+        matches("Haus", "house" -> 0.7, "the" -> 0.2),
+        matches("alte", "house" -> 0.3, "the" -> 0.6))
+
+      render(stat.pruneMatches(pts, counts("the" -> 2, "house" -> 1))) should be (
+        List(List("the:0.5"), List("house:0.7"), List("the:0.6")))
+    }
+
+    it("should not change the given matches unless asked to") {
+      val pts = List(matches("das", "the" -> 0.5, "the" -> 0.1))
+
+      stat.pruneMatches(pts, counts("the" -> 1))
+      render(pts) should be (List(List("the:0.5", "the:0.1")))
+
+      stat.pruneMatches(pts, counts("the" -> 1), false)
+      render(pts) should be (List(List("the:0.5")))
+    }
+
+    it("should keep the first of equally likely candidates") {
+      val pts = List(
+        matches("a", "the" -> 0.5),
+        matches("b", "the" -> 0.5),
+        matches("c", "the" -> 0.5))
+
+      render(stat.pruneMatches(pts, counts("the" -> 2))) should be (List(List("the:0.5"), List("the:0.5"), List()))
+    }
+
+    it("should only retain NaN candidates of a word if one of them is among the most likely") {
+      val pts = List(
+        matches("a", "the" -> 0.5, "house" -> Double.NaN),
+        matches("b", "the" -> Double.NaN, "house" -> 0.9))
+
+      render(stat.pruneMatches(pts, counts("the" -> 1, "house" -> 1))) should be (
+        List(List("house:NaN"), List("the:NaN")))
+      render(stat.pruneMatches(pts, counts("the" -> 2, "house" -> 2))) should be (
+        List(List("the:0.5", "house:NaN"), List("the:NaN", "house:0.9")))
+    }
+
+    it("should be the same as pruning every word with the original sort") {
+      val random = new Random(42)
+      val words = List("the", "house", "old", "a", "man")
+      val probabilities = List(0.0, -0.0, 0.1, 0.25, 0.5, 0.5, 1.0, Double.NaN)
+
+      for (n <- 1 to 500) {
+        val pts = for (source <- 1 to random.nextInt(6)) yield {
+          val candidates = for (c <- 1 to random.nextInt(6)) yield
+            words(random.nextInt(words.size)) -> probabilities(random.nextInt(probabilities.size))
+
+          matches("w" + source, candidates: _*)
+        }
+        val wordCounts = words.map(_ -> random.nextInt(3))
+
+        render(stat.pruneMatches(pts, counts(wordCounts: _*))) should be (
+          render(sortedPrune(pts, wordCounts.toMap)))
+      }
+    }
+  }
+}
+
+object WordPruningSpec {
+  def matches(source: String, candidates: (String, Double)*): PossibleTranslations =
+    new PossibleTranslations(source, new java.util.LinkedList[Candidate](
+      candidates.map { case (word, prob) => new Candidate(word, prob) }))
+
+  def counts(wordCounts: (String, Int)*): java.util.Map[String, Integer] =
+    mapAsJavaMap(wordCounts.map { case (word, count) => word -> Int.box(count) }.toMap)
+
+  def render(pts: Seq[PossibleTranslations]): List[List[String]] =
+    pts.toList.map(_.getCandidates.toList.map(c => c.getWord + ":" + c.getProbability))
+
+  /**
+   * The pruning StatAlign used before WordPruning: for each word sort all of its probabilities,
+   * keep the first ones and remove candidates accordingly in a separate pass per word.
+   */
+  def sortedPrune(matches: Seq[PossibleTranslations], counts: Map[String, Int]): Seq[PossibleTranslations] = {
+    val pts = matches.map(_.copy())
+    val words = pts.flatMap(_.getCandidates.map(_.getWord)).distinct
+
+    for (word <- words) {
+      val wordCount = counts(word)
+      val probabilities = new java.util.ArrayList[java.lang.Double](
+        pts.flatMap(_.getCandidates.filter(_.getWord == word).map(c => java.lang.Double.valueOf(c.getProbability))))
+
+      java.util.Collections.sort(probabilities)
+      java.util.Collections.reverse(probabilities)
+
+      val retained = probabilities.take(wordCount)
+      val minProb: Double = if (retained.isEmpty) 1000 else retained.last.doubleValue
+      val minNaN = minProb.isNaN
+      var maxCount = 0
+
+      for (pt <- pts) {
+        val cands = pt.getCandidates.iterator
+
+        while (cands.hasNext) {
+          val cand = cands.next()
+
+          if (cand.getWord == word) {
+            if (cand.getProbability < minProb || (minNaN && !cand.getProbability.isNaN)) {
+              cands.remove()
+            } else if (cand.getProbability >= minProb && { maxCount += 1; maxCount - 1 >= wordCount }) {
+              cands.remove()
+            }
+          }
+        }
+      }
+    }
+
+    pts
+  }
+}